@@ -0,0 +1,88 @@
+package bench;
+
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.TransportLog;
+import mock.pipeline.DeliveryBatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One future per payload against the batched delivery paths of DeliveryBatcher
+ * Scores are per payload delivered
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(BatchingBenchmark.PAYLOADS)
+public class BatchingBenchmark {
+    static final int PAYLOADS = 10_000;
+
+    @Param({"16", "64", "256"})
+    public int batchSize;
+
+    @Param({"10", "1000"})
+    public int iterations;
+
+    private Transport transport;
+    private List<Payload> payloads;
+    private ExecutorService executor;
+    private HierarchicalTimerWheel timer;
+    private DeliveryBatcher batcher;
+
+    @Setup
+    public void setUp() {
+        transport = new Transport(iterations, TransportLog.NONE);
+        payloads = new ArrayList<>(PAYLOADS);
+        for(int i = 0; i < PAYLOADS; i++) {
+            payloads.add(new Payload<>("Package-" + i, i));
+        }
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        timer = new HierarchicalTimerWheel(executor);
+        batcher = new DeliveryBatcher(transport, executor, timer, batchSize, 1, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        batcher.close();
+        timer.close();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void futurePerPayload() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[PAYLOADS];
+        for(int i = 0; i < PAYLOADS; i++) {
+            Payload payload = payloads.get(i);
+            futures[i] = CompletableFuture.supplyAsync(() -> transport.deliveryPayload(payload), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @Benchmark
+    // Per item futures, completed from one task per batch
+    public void futurePerPayloadBatched() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[PAYLOADS];
+        for(int i = 0; i < PAYLOADS; i++) {
+            futures[i] = batcher.submit(payloads.get(i));
+        }
+        batcher.flush();
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @Benchmark
+    // One future per batch
+    public void futurePerBatch() {
+        CompletableFuture.allOf(batcher.deliverBatches(payloads).toArray(new CompletableFuture<?>[0])).join();
+    }
+}
@@ -0,0 +1,65 @@
+package bench;
+
+import mock.app.ExecutorStrategy;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.TransportLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many concurrent sleeping deliveries each executor sustains
+ * Every invocation starts "concurrency" deliveries that each block for 10ms and waits for all of them.
+ * The deliveries counter is reported per second; it grows with concurrency until the executor runs
+ * out of threads, then stays flat. VIRTUAL fails to set up on JDKs without virtual threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockingDeliveryBenchmark {
+
+    @Param({"COMMON_POOL", "FIXED", "CACHED", "VIRTUAL"})
+    public ExecutorStrategy strategy;
+
+    @Param({"100", "1000", "10000"})
+    public int concurrency;
+
+    private ExecutorService executor;
+    private Transport transport;
+    private Payload<Integer> payload;
+
+    @Setup
+    public void setUp() {
+        executor = strategy.create();
+        transport = new Transport(0, TransportLog.NONE, 10, TimeUnit.MILLISECONDS);
+        payload = new Payload<>("Default", 10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(!strategy.isShared())
+            executor.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Deliveries {
+        public long deliveries;
+    }
+
+    @Benchmark
+    public void sleepingDeliveries(Deliveries counter) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[concurrency];
+        for(int i = 0; i < concurrency; i++) {
+            futures[i] = CompletableFuture.supplyAsync(() -> transport.deliveryPayload(payload), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+        counter.deliveries += concurrency;
+    }
+}
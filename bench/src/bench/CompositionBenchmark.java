@@ -0,0 +1,139 @@
+package bench;
+
+import mock.entity.Payload;
+import mock.entity.Transport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of each CompletableFuture composition shown in BasicTest and StagingTest
+ * Each pattern is run with the sync and *Async variants, on the default executor and on a custom one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositionBenchmark {
+
+    /**
+     * Small, medium and large transports from the tests
+     */
+    @Param({"10", "1000", "100000"})
+    public int iterations;
+
+    /**
+     * DEFAULT runs the *Async stages on ForkJoinPool.commonPool(), CUSTOM on a dedicated fixed pool
+     */
+    @Param({"DEFAULT", "CUSTOM"})
+    public String executorType;
+
+    private Transport transport;
+    private Payload<Integer> intPayload;
+    private Payload<String> stringPayload;
+    private ExecutorService customExecutor;
+    private Executor executor;
+
+    @Setup
+    public void setUp() {
+        transport = new Transport(false, iterations);
+        intPayload = new Payload<>("Default", 10);
+        stringPayload = new Payload<>("Default", "I am the default String payload");
+        customExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        executor = "CUSTOM".equals(executorType) ? customExecutor : ForkJoinPool.commonPool();
+    }
+
+    @TearDown
+    public void tearDown() {
+        customExecutor.shutdown();
+    }
+
+    @Benchmark
+    // Baseline: the transport work with no future around it
+    public Payload direct() {
+        return transport.deliveryPayload(intPayload);
+    }
+
+    @Benchmark
+    public Payload supplyAsync() {
+        return CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor).join();
+    }
+
+    @Benchmark
+    public Payload thenApply() {
+        return CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor)
+                .thenApply(payload -> payload)
+                .join();
+    }
+
+    @Benchmark
+    public Payload thenApplyAsync() {
+        return CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor)
+                .thenApplyAsync(payload -> payload, executor)
+                .join();
+    }
+
+    @Benchmark
+    public Payload thenCombine() {
+        CompletableFuture<Payload> first = CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor);
+        CompletableFuture<Payload> second = CompletableFuture.supplyAsync(() -> transport.deliveryPayload(stringPayload), executor);
+        return first.thenCombine(second, (s1, s2) -> s1).join();
+    }
+
+    @Benchmark
+    public Payload thenCombineAsync() {
+        CompletableFuture<Payload> first = CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor);
+        CompletableFuture<Payload> second = CompletableFuture.supplyAsync(() -> transport.deliveryPayload(stringPayload), executor);
+        return first.thenCombineAsync(second, (s1, s2) -> s1, executor).join();
+    }
+
+    @Benchmark
+    public Payload thenCompose() {
+        return CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor)
+                .thenCompose(result -> CompletableFuture.supplyAsync(() -> transport.deliveryPayload(stringPayload), executor))
+                .join();
+    }
+
+    @Benchmark
+    public Payload thenComposeAsync() {
+        return CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor)
+                .thenComposeAsync(result -> CompletableFuture.supplyAsync(() -> transport.deliveryPayload(stringPayload), executor), executor)
+                .join();
+    }
+
+    @Benchmark
+    public Payload handle() {
+        return CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor)
+                .handle((result, throwable) -> result)
+                .join();
+    }
+
+    @Benchmark
+    public Payload handleAsync() {
+        return CompletableFuture.supplyAsync(() -> transport.deliveryPayload(intPayload), executor)
+                .handleAsync((result, throwable) -> result, executor)
+                .join();
+    }
+
+    @Benchmark
+    // The failing delivery recovered through exceptionally
+    public Payload exceptionally() {
+        return CompletableFuture.<Payload>supplyAsync(() -> {
+                    try {
+                        transport.deliveryPayload(intPayload, true);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return intPayload;
+                }, executor)
+                .exceptionally(throwable -> stringPayload)
+                .join();
+    }
+}
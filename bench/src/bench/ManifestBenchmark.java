@@ -0,0 +1,93 @@
+package bench;
+
+import mock.entity.DestinationRegistry;
+import mock.pipeline.ManifestReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse throughput of the streaming manifest reader
+ * The bytes counter is reported as bytes per second, peakHeapBytes as the heap high-water mark of the iteration
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class ManifestBenchmark {
+
+    @Param({"1000000"})
+    public int lines;
+
+    @Param({"8192", "65536", "1048576"})
+    public int bufferSize;
+
+    private Path manifest;
+    private ManifestReader reader;
+
+    @Setup
+    public void setUp() throws IOException {
+        manifest = Files.createTempFile("manifest", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+            for(int i = 0; i < lines; i++) {
+                writer.write("Package-" + i + ",HQ-" + (i % 64) + ",HQ-" + ((i + 1) % 64) + ",contents of package " + i);
+                writer.newLine();
+            }
+        }
+
+        DestinationRegistry registry = new DestinationRegistry();
+        reader = new ManifestReader(manifest, registry::intern, bufferSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(manifest);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Heap {
+        public long peakHeapBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if(pool.getType() == MemoryType.HEAP)
+                    pool.resetPeakUsage();
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void record() {
+            long peak = 0;
+            for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if(pool.getType() == MemoryType.HEAP)
+                    peak += pool.getPeakUsage().getUsed();
+            }
+            peakHeapBytes = peak;
+        }
+    }
+
+    @Benchmark
+    public void parse(Bytes bytes, Heap heap, Blackhole blackhole) throws IOException {
+        reader.forEach(blackhole::consume);
+        bytes.bytes += reader.getBytesRead();
+    }
+}
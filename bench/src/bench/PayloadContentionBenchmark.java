@@ -0,0 +1,82 @@
+package bench;
+
+import mock.entity.Destination;
+import mock.entity.Payload;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many stages reading and moving one shared payload
+ * Compares the lock-free Payload with the previous monitor based implementation.
+ * Run with "-t 1 -t 2 -t 4 ..." (or -t max) to see how each scales with threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadContentionBenchmark {
+
+    private Destination origin;
+    private Destination destination;
+    private Payload<Integer> payload;
+    private SynchronizedPayload synchronizedPayload;
+
+    @Setup
+    public void setUp() {
+        origin = new Destination("Origin");
+        destination = new Destination("Destination");
+        payload = new Payload<>("Default", 10, origin, destination);
+        synchronizedPayload = new SynchronizedPayload(destination);
+    }
+
+    @Benchmark
+    public boolean synchronizedMoveAndCheck() {
+        synchronizedPayload.setCurrentLocation(destination);
+        return synchronizedPayload.isDelivered();
+    }
+
+    @Benchmark
+    public boolean lockFreeMoveAndCheck() {
+        payload.setCurrentLocation(destination);
+        return payload.isDelivered();
+    }
+
+    @Benchmark
+    public boolean synchronizedRead() {
+        return synchronizedPayload.isDelivered();
+    }
+
+    @Benchmark
+    public boolean lockFreeRead() {
+        return payload.isDelivered();
+    }
+
+    @Benchmark
+    // Each thread tries to claim the next hop, only one wins per transition
+    public boolean lockFreeCompareAndSet() {
+        return payload.compareAndSetLocation(origin, destination) || payload.compareAndSetLocation(destination, origin);
+    }
+
+    /**
+     * The monitor based state Payload used before it moved to VarHandles
+     */
+    private static class SynchronizedPayload {
+        private final Destination destination;
+        private Destination currentLocation;
+
+        private SynchronizedPayload(Destination destination) {
+            this.destination = destination;
+        }
+
+        private synchronized boolean isDelivered() {
+            return currentLocation == destination;
+        }
+
+        private synchronized void setCurrentLocation(Destination newLocation) {
+            currentLocation = newLocation;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package bench;
+
+import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.TransportLog;
+import mock.pipeline.ShardedDelivery;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * How delivery throughput scales with the shard count
+ * sharded runs ShardedDelivery with one thread per shard, sharedPool runs the same payloads as one future
+ * per payload on a fixed pool with as many threads, counting deliveries per headquarters in shared counters.
+ * Scores are per payload delivered; sharded should grow close to linearly up to min(cores, HEADQUARTERS).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(ShardingBenchmark.PAYLOADS)
+public class ShardingBenchmark {
+    static final int PAYLOADS = 100_000;
+    static final int HEADQUARTERS = 16;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int shards;
+
+    @Param({"1000"})
+    public int iterations;
+
+    private List<Payload> payloads;
+    private List<Transport> trucks;
+    private ShardedDelivery sharded;
+    private ExecutorService executor;
+    private AtomicLongArray deliveredByHeadquarters;
+
+    @Setup
+    public void setUp() {
+        DestinationRegistry registry = new DestinationRegistry(HEADQUARTERS);
+        payloads = new ArrayList<>(PAYLOADS);
+        for(int i = 0; i < PAYLOADS; i++) {
+            Destination origin = registry.intern("HQ-" + i % HEADQUARTERS);
+            Destination destination = registry.intern("HQ-" + (i * 7 + 3) % HEADQUARTERS);
+            payloads.add(new Payload<>("Package-" + i, i, origin, destination));
+        }
+        trucks = new ArrayList<>();
+        for(int i = 0; i < HEADQUARTERS; i++) {
+            trucks.add(new Transport(iterations, TransportLog.NONE));
+        }
+        sharded = new ShardedDelivery(shards, trucks, 1_024);
+        executor = Executors.newFixedThreadPool(shards);
+        deliveredByHeadquarters = new AtomicLongArray(HEADQUARTERS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sharded.close();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public long sharded() {
+        return sharded.deliver(payloads);
+    }
+
+    @Benchmark
+    public void sharedPool() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[PAYLOADS];
+        for(int i = 0; i < PAYLOADS; i++) {
+            Payload payload = payloads.get(i);
+            Transport truck = trucks.get(i % trucks.size());
+            futures[i] = CompletableFuture.runAsync(() -> {
+                truck.deliveryPayload(payload);
+                payload.setCurrentLocation(payload.getDestination());
+                deliveredByHeadquarters.incrementAndGet(payload.getDestination().getId());
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
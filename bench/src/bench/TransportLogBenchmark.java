@@ -0,0 +1,75 @@
+package bench;
+
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.AsyncTransportLog;
+import mock.log.ConsoleTransportLog;
+import mock.log.TransportLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the logging modes of Transport.transportPayload from several threads at once
+ * Run with "-prof gc" to see the allocation rate of each mode, NONE should report ~0 B/op
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class TransportLogBenchmark {
+
+    @Param({"NONE", "CONSOLE", "ASYNC"})
+    public String mode;
+
+    @Param({"10", "1000"})
+    public int iterations;
+
+    private Transport transport;
+    private Payload<Integer> payload;
+    private AsyncTransportLog asyncLog;
+
+    @Setup
+    public void setUp() {
+        // Discard the output so only the cost of producing it is measured
+        PrintStream sink = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        TransportLog log;
+        switch (mode) {
+            case "CONSOLE":
+                log = new ConsoleTransportLog(sink);
+                break;
+            case "ASYNC":
+                asyncLog = new AsyncTransportLog(sink);
+                log = asyncLog;
+                break;
+            default:
+                log = TransportLog.NONE;
+        }
+        transport = new Transport(iterations, log);
+        payload = new Payload<>("Default", 10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(asyncLog != null)
+            asyncLog.close();
+    }
+
+    @Benchmark
+    public void transportPayload() {
+        transport.transportPayload(payload);
+    }
+}
@@ -0,0 +1,64 @@
+package mock.app;
+
+/**
+ * Summary of a single run of the delivery application
+ */
+public class DeliveryReport {
+    private final ExecutorStrategy strategy;
+    private final long delivered;
+    private final long failed;
+    private final long missed;
+    private final long elapsedNanos;
+
+    public DeliveryReport(ExecutorStrategy strategy, long delivered, long failed, long elapsedNanos) {
+        this(strategy, delivered, failed, 0, elapsedNanos);
+    }
+
+    public DeliveryReport(ExecutorStrategy strategy, long delivered, long failed, long missed, long elapsedNanos) {
+        this.strategy = strategy;
+        this.delivered = delivered;
+        this.failed = failed;
+        this.missed = missed;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public ExecutorStrategy getStrategy() {
+        return strategy;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the amount of packages that were not delivered before their deadline
+     *
+     * @return missed deadline count
+     */
+    public long getMissed() {
+        return missed;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get the amount of deliveries that completed per second
+     *
+     * @return deliveries per second over the whole run
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : (delivered + failed + missed) * 1_000_000_000d / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d delivered, %d failed, %d missed in %.1f ms (%.0f deliveries/s)",
+                strategy, delivered, failed, missed, elapsedNanos / 1_000_000d, getThroughput());
+    }
+}
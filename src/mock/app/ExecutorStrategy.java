@@ -0,0 +1,118 @@
+package mock.app;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executors the delivery application can dispatch its payloads onto
+ */
+public enum ExecutorStrategy {
+    /**
+     * The shared ForkJoinPool.commonPool(), the default for the *Async methods
+     */
+    COMMON_POOL {
+        @Override
+        public ExecutorService create() {
+            return ForkJoinPool.commonPool();
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+    },
+    /**
+     * A fixed pool with one platform thread per available core
+     */
+    FIXED {
+        @Override
+        public ExecutorService create() {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    },
+    /**
+     * An unbounded pool that creates threads on demand and reuses idle ones
+     */
+    CACHED {
+        @Override
+        public ExecutorService create() {
+            return Executors.newCachedThreadPool();
+        }
+    },
+    /**
+     * A dedicated work-stealing ForkJoinPool sized to the available cores
+     */
+    WORK_STEALING {
+        @Override
+        public ExecutorService create() {
+            return Executors.newWorkStealingPool();
+        }
+    },
+    /**
+     * A ForkJoinPool in async (FIFO) mode, suited to event-style tasks that are never joined
+     */
+    FORK_JOIN_ASYNC {
+        @Override
+        public ExecutorService create() {
+            return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+    },
+    /**
+     * A fixed pool with a bounded queue that runs tasks on the submitting thread once the queue is full
+     */
+    CALLER_RUNS_BOUNDED {
+        @Override
+        public ExecutorService create() {
+            int cores = Runtime.getRuntime().availableProcessors();
+            return new ThreadPoolExecutor(cores, cores, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(cores * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    },
+    /**
+     * A single dedicated platform thread, everything submitted runs confined to it in order
+     * Used per shard by the sharded mode, where each headquarters' state is only touched by its own thread
+     */
+    PINNED {
+        @Override
+        public ExecutorService create() {
+            return Executors.newSingleThreadExecutor();
+        }
+    },
+    /**
+     * One virtual thread per task
+     * Only available when running on a JDK that ships virtual threads (21+)
+     */
+    VIRTUAL {
+        @Override
+        public ExecutorService create() {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new UnsupportedOperationException("Virtual threads require JDK 21 or newer", e);
+            }
+        }
+    };
+
+    /**
+     * Create the executor for this strategy
+     *
+     * @return a ready to use executor
+     */
+    public abstract ExecutorService create();
+
+    /**
+     * Determines if the executor is shared with the rest of the JVM and must not be shut down
+     *
+     * @return True if the executor is shared, false otherwise
+     */
+    public boolean isShared() {
+        return false;
+    }
+}
@@ -0,0 +1,315 @@
+package mock.app;
+
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.metrics.LatencyHistogram;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives an executor with a synthetic open-loop stream of deliveries for a fixed duration
+ *
+ * Arrivals follow a Poisson process: each one is scheduled an exponentially distributed gap after the
+ * previous one, whether or not earlier deliveries have finished, so a saturated executor builds a backlog
+ * instead of slowing the generator down. Latency is measured from the scheduled arrival time rather than
+ * from when the delivery started, which corrects for coordinated omission; the service time alone is
+ * recorded separately for comparison.
+ * Payload sizes, in transport iterations, are exponentially distributed, destinations follow a Zipf
+ * distribution over the headquarters and a share of deliveries fail through Transport's shouldFail overload.
+ */
+public class LoadGenerator {
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final List<Destination> headquarters;
+    private final Executor executor;
+    private double arrivalsPerSecond;
+    private int meanIterations;
+    private double skew;
+    private double failureRate;
+    private int maxOutstanding;
+    private long sampleIntervalNanos;
+    private long seed;
+
+    /**
+     * @param headquarters - Headquarters payloads travel between
+     * @param executor - Executor the deliveries run on
+     */
+    public LoadGenerator(List<Destination> headquarters, Executor executor) {
+        if(headquarters.isEmpty())
+            throw new IllegalArgumentException("Load needs at least one headquarters");
+
+        this.headquarters = headquarters;
+        this.executor = executor;
+        this.arrivalsPerSecond = 1_000;
+        this.meanIterations = 1_000;
+        this.maxOutstanding = 1 << 20;
+        this.sampleIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+        this.seed = System.nanoTime();
+    }
+
+    /**
+     * @param arrivalsPerSecond - Mean arrival rate of the Poisson process
+     */
+    public void setArrivalRate(double arrivalsPerSecond) {
+        if(!(arrivalsPerSecond > 0))
+            throw new IllegalArgumentException("Arrival rate must be positive");
+        this.arrivalsPerSecond = arrivalsPerSecond;
+    }
+
+    /**
+     * @param meanIterations - Mean transport iterations of a payload, sizes are exponentially distributed around it
+     */
+    public void setPayloadSize(int meanIterations) {
+        if(meanIterations < 1)
+            throw new IllegalArgumentException("Mean payload size must be positive");
+        this.meanIterations = meanIterations;
+    }
+
+    /**
+     * @param skew - Zipf exponent of the destinations, 0 spreads them evenly, higher values favour the first headquarters
+     */
+    public void setDestinationSkew(double skew) {
+        if(!(skew >= 0))
+            throw new IllegalArgumentException("Skew must not be negative");
+        this.skew = skew;
+    }
+
+    /**
+     * @param failureRate - Fraction of deliveries that fail, between 0 and 1
+     */
+    public void setFailureRate(double failureRate) {
+        if(!(failureRate >= 0 && failureRate <= 1))
+            throw new IllegalArgumentException("Failure rate must be between 0 and 1");
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Cap the backlog so a saturated run reports dropped arrivals instead of running out of heap
+     *
+     * @param maxOutstanding - Maximum amount of deliveries queued or running at once
+     */
+    public void setMaxOutstanding(int maxOutstanding) {
+        if(maxOutstanding < 1)
+            throw new IllegalArgumentException("Outstanding limit must be positive");
+        this.maxOutstanding = maxOutstanding;
+    }
+
+    /**
+     * @param interval - Time between two heap samples
+     * @param unit - Unit of the interval
+     */
+    public void setSampleInterval(long interval, TimeUnit unit) {
+        if(interval < 1)
+            throw new IllegalArgumentException("Sample interval must be positive");
+        this.sampleIntervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * @param seed - Seed of the arrivals, sizes, destinations and failures, for repeatable runs
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Generate arrivals on the calling thread for the duration, then wait for the backlog to drain
+     *
+     * @param duration - Time arrivals are generated for
+     * @param unit - Unit of the duration
+     * @return a report of the run
+     */
+    public LoadReport run(long duration, TimeUnit unit) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] destinations = zipf(headquarters.size(), skew);
+        LatencyHistogram latency = new LatencyHistogram();
+        LatencyHistogram service = new LatencyHistogram();
+        LongAdder delivered = new LongAdder();
+        LongAdder failed = new LongAdder();
+        AtomicInteger outstanding = new AtomicInteger();
+        long[] arrivals = new long[headquarters.size()];
+        long dropped = 0;
+        Sampler sampler = new Sampler(sampleIntervalNanos);
+        double meanGapNanos = 1_000_000_000d / arrivalsPerSecond;
+
+        long start = System.nanoTime();
+        sampler.start(start);
+        long end = start + unit.toNanos(duration);
+        long scheduled = start;
+        int sequence = 0;
+        while(true) {
+            scheduled += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+            if(scheduled >= end)
+                break;
+            // Behind schedule the arrival is submitted at once, the backlog shows up in the latency
+            long now;
+            while((now = System.nanoTime()) < scheduled) {
+                sampler.sample(now);
+                LockSupport.parkNanos(scheduled - now);
+            }
+            sampler.sample(now);
+
+            int target = pick(destinations, random.nextDouble());
+            int iterations = 1 + (int) Math.min(Integer.MAX_VALUE - 1, -Math.log(1 - random.nextDouble()) * meanIterations);
+            int origin = random.nextInt(headquarters.size());
+            boolean fail = random.nextDouble() < failureRate;
+            arrivals[target]++;
+            if(outstanding.get() >= maxOutstanding) {
+                dropped++;
+                continue;
+            }
+
+            Destination destination = headquarters.get(target);
+            Payload payload = new Payload<>("Load-" + sequence++, iterations, headquarters.get(origin), destination);
+            // A truck of exactly the drawn size, no heavier than the payload allocated with it
+            Transport truck = new Transport(false, iterations);
+            long arrival = scheduled;
+            outstanding.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    long begin = System.nanoTime();
+                    try {
+                        if(fail) {
+                            truck.deliveryPayload(payload, true);
+                        } else {
+                            truck.deliveryPayload(payload);
+                            payload.setCurrentLocation(destination);
+                        }
+                        delivered.increment();
+                    } catch (Exception e) {
+                        failed.increment();
+                    }
+                    long finished = System.nanoTime();
+                    service.record(finished - begin);
+                    latency.record(finished - arrival);
+                    outstanding.decrementAndGet();
+                });
+            } catch (RejectedExecutionException e) {
+                outstanding.decrementAndGet();
+                dropped++;
+            }
+        }
+
+        while(outstanding.get() > 0) {
+            sampler.sample(System.nanoTime());
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        long finished = System.nanoTime();
+        sampler.finish(finished);
+
+        return new LoadReport(arrivalsPerSecond, unit.toNanos(duration), finished - start, delivered.sum(), failed.sum(), dropped,
+                arrivals, latency.snapshot(), service.snapshot(), sampler.gcMillis, sampler.gcCount,
+                sampler.times(), sampler.heap());
+    }
+
+    // Cumulative distribution of a Zipf law over the headquarters
+    private static double[] zipf(int size, double exponent) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for(int i = 0; i < size; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for(int i = 0; i < size; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int pick(double[] cumulative, double uniform) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(cumulative[middle] < uniform)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    // Samples the heap at a fixed interval and the collectors at the start and end of a run
+    private static class Sampler {
+        private final long intervalNanos;
+        private final MemoryMXBean memory;
+        private final List<long[]> samples;
+        private long started;
+        private long next;
+        private long gcMillisAtStart;
+        private long gcCountAtStart;
+        private long gcMillis;
+        private long gcCount;
+
+        private Sampler(long intervalNanos) {
+            this.intervalNanos = intervalNanos;
+            this.memory = ManagementFactory.getMemoryMXBean();
+            this.samples = new ArrayList<>();
+        }
+
+        private void start(long now) {
+            started = now;
+            next = now;
+            gcMillisAtStart = collectionMillis();
+            gcCountAtStart = collectionCount();
+            sample(now);
+        }
+
+        private void sample(long now) {
+            if(now < next)
+                return;
+            samples.add(new long[]{TimeUnit.NANOSECONDS.toMillis(now - started), memory.getHeapMemoryUsage().getUsed()});
+            next = now + intervalNanos;
+        }
+
+        private void finish(long now) {
+            next = now;
+            sample(now);
+            gcMillis = collectionMillis() - gcMillisAtStart;
+            gcCount = collectionCount() - gcCountAtStart;
+        }
+
+        private long[] times() {
+            long[] times = new long[samples.size()];
+            for(int i = 0; i < times.length; i++) {
+                times[i] = samples.get(i)[0];
+            }
+            return times;
+        }
+
+        private long[] heap() {
+            long[] heap = new long[samples.size()];
+            for(int i = 0; i < heap.length; i++) {
+                heap[i] = samples.get(i)[1];
+            }
+            return heap;
+        }
+
+        private static long collectionMillis() {
+            long millis = 0;
+            for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+            return millis;
+        }
+
+        private static long collectionCount() {
+            long count = 0;
+            for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+    }
+}
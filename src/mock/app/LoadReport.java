@@ -0,0 +1,164 @@
+package mock.app;
+
+import mock.metrics.LatencyHistogram;
+
+/**
+ * Summary of a single load generator run
+ */
+public class LoadReport {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final double offeredRate;
+    private final long durationNanos;
+    private final long elapsedNanos;
+    private final long delivered;
+    private final long failed;
+    private final long dropped;
+    private final long[] arrivals;
+    private final LatencyHistogram.Snapshot latency;
+    private final LatencyHistogram.Snapshot service;
+    private final long gcMillis;
+    private final long gcCount;
+    private final long[] heapTimes;
+    private final long[] heapUsed;
+
+    public LoadReport(double offeredRate, long durationNanos, long elapsedNanos, long delivered, long failed, long dropped,
+                      long[] arrivals, LatencyHistogram.Snapshot latency, LatencyHistogram.Snapshot service,
+                      long gcMillis, long gcCount, long[] heapTimes, long[] heapUsed) {
+        this.offeredRate = offeredRate;
+        this.durationNanos = durationNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.delivered = delivered;
+        this.failed = failed;
+        this.dropped = dropped;
+        this.arrivals = arrivals;
+        this.latency = latency;
+        this.service = service;
+        this.gcMillis = gcMillis;
+        this.gcCount = gcCount;
+        this.heapTimes = heapTimes;
+        this.heapUsed = heapUsed;
+    }
+
+    public double getOfferedRate() {
+        return offeredRate;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the amount of arrivals that were not run because the backlog was full or the executor rejected them
+     *
+     * @return dropped arrival count
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Get the amount of arrivals per destination, in the order of the generator's headquarters
+     *
+     * @return arrival counts, dropped arrivals included
+     */
+    public long[] getArrivals() {
+        return arrivals;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get the amount of deliveries that completed per second, from the first arrival until the backlog drained
+     *
+     * @return achieved deliveries per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : (delivered + failed) * 1_000_000_000d / elapsedNanos;
+    }
+
+    /**
+     * Get the time from each scheduled arrival until its delivery finished, corrected for coordinated omission
+     *
+     * @return latency distribution in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency;
+    }
+
+    /**
+     * Get the time each delivery spent running, without the time it waited for a thread
+     *
+     * @return service time distribution in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getServiceTime() {
+        return service;
+    }
+
+    /**
+     * Get the time the garbage collectors reported spending during the run
+     *
+     * @return collection time in milliseconds
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * Get the times the heap was sampled at
+     *
+     * @return milliseconds since the start of the run, one per heap sample
+     */
+    public long[] getHeapTimes() {
+        return heapTimes;
+    }
+
+    /**
+     * Get the used heap at each sample
+     *
+     * @return used heap in bytes, one per sample time
+     */
+    public long[] getHeapUsed() {
+        return heapUsed;
+    }
+
+    /**
+     * Determines if the offered rate was sustained, a saturated run keeps growing its backlog
+     * and finishes well after its duration or drops arrivals
+     *
+     * @return True if nothing was dropped and the backlog drained within a tenth of the duration, false otherwise
+     */
+    public boolean isSustained() {
+        return dropped == 0 && elapsedNanos <= durationNanos + durationNanos / 10;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("offered %.0f/s, achieved %.0f/s: %d delivered, %d failed, %d dropped in %.1f ms%s%n",
+                offeredRate, getThroughput(), delivered, failed, dropped, elapsedNanos / 1_000_000d,
+                isSustained() ? "" : " (saturated)"));
+        report.append(String.format("%-10s %12s %12s%n", "quantile", "latency us", "service us"));
+        for(double quantile : QUANTILES) {
+            report.append(String.format("%-10s %12.1f %12.1f%n", "p" + quantile * 100,
+                    latency.getValueAtQuantile(quantile) / 1_000d, service.getValueAtQuantile(quantile) / 1_000d));
+        }
+        report.append(String.format("%-10s %12.1f %12.1f%n", "max", latency.getMax() / 1_000d, service.getMax() / 1_000d));
+        report.append(String.format("gc: %d collections, %d ms%n", gcCount, gcMillis));
+        report.append("heap MB:");
+        for(int i = 0; i < heapTimes.length; i++) {
+            report.append(String.format(" %d@%dms", heapUsed[i] >> 20, heapTimes[i]));
+        }
+        return report.toString();
+    }
+}
@@ -1,28 +1,639 @@
 package mock.app;
 
+import mock.concurrent.HierarchicalTimerWheel;
 import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
 import mock.entity.Payload;
 import mock.entity.Transport;
+import mock.log.DeliveryJournal;
+import mock.log.JournalReplay;
+import mock.log.TransportLog;
+import mock.pipeline.BoundedDeliveryStage;
+import mock.pipeline.DestinationGuard;
+import mock.pipeline.FleetScheduler;
+import mock.pipeline.ManifestReader;
+import mock.pipeline.PayloadSource;
+import mock.pipeline.RejectionPolicy;
+import mock.pipeline.ShardedDelivery;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 public class PackageDeliveryApplication {
     private List<Destination> headquarters;
     private List<Payload> packages;
     private List<Transport> trucks;
+    private final DestinationRegistry registry;
+    // Deliveries completed per headquarters, indexed by destination id
+    private final AtomicLongArray deliveredByHeadquarters;
+    private final ExecutorStrategy strategy;
+    private final ExecutorService executor;
+    private ExecutorStrategy blockingStrategy;
+    private ExecutorService blockingExecutor;
+    private int maxInFlight;
+    private int queueDepth;
+    private RejectionPolicy rejectionPolicy;
+    private long deliveryBudgetNanos;
+    private HierarchicalTimerWheel timer;
+    private FleetScheduler fleet;
+    private DestinationGuard guard;
+    private DeliveryJournal journal;
+    private JournalReplay replay;
 
     public PackageDeliveryApplication() {
+        this(ExecutorStrategy.COMMON_POOL);
     }
 
+    /**
+     * Create an application that dispatches its deliveries onto the given executor strategy
+     *
+     * @param strategy - Executor every delivery stage will run on
+     */
+    public PackageDeliveryApplication(ExecutorStrategy strategy) {
+        this.strategy = strategy;
+        this.executor = strategy.create();
+        this.headquarters = new ArrayList<>();
+        this.packages = new ArrayList<>();
+        this.trucks = new ArrayList<>();
+        this.registry = new DestinationRegistry();
+        this.deliveredByHeadquarters = new AtomicLongArray(registry.capacity());
+        this.maxInFlight = Runtime.getRuntime().availableProcessors() * 64;
+        this.queueDepth = maxInFlight;
+        this.rejectionPolicy = RejectionPolicy.BLOCK;
+    }
+
+    /**
+     * Create the headquarters payloads are sent between
+     *
+     * @param headquartersAmount - Amount of headquarters to create
+     */
     public void setUpHeadquarters(int headquartersAmount) {
+        for(int i = 0; i < headquartersAmount; i++) {
+            headquarter("HQ-" + i);
+        }
+    }
+
+    // Intern the headquarters, adding it to the list the first time it is seen
+    private Destination headquarter(String name) {
+        Destination destination = registry.intern(name);
+        if(destination.getId() >= headquarters.size())
+            headquarters.add(destination);
+        return destination;
+    }
+
+    /**
+     * Create the trucks that payloads are dispatched onto
+     *
+     * @param truckAmount - Amount of trucks to create
+     * @param iterations - Amount of iterations each truck takes to transport a payload
+     */
+    public void setUpTrucks(int truckAmount, int iterations) {
+        for(int i = 0; i < truckAmount; i++) {
+            trucks.add(new Transport(false, iterations));
+        }
+    }
+
+    /**
+     * Create trucks that block on every delivery, e.g. waiting on a remote depot
+     *
+     * @param truckAmount - Amount of trucks to create
+     * @param iterations - Amount of iterations each truck takes to transport a payload
+     * @param pause - Time each delivery blocks its thread
+     * @param unit - Unit of the pause
+     */
+    public void setUpTrucks(int truckAmount, int iterations, long pause, TimeUnit unit) {
+        for(int i = 0; i < truckAmount; i++) {
+            trucks.add(new Transport(iterations, TransportLog.NONE, pause, unit));
+        }
+    }
+
+    /**
+     * Run the deliveries of blocking trucks on their own executor while CPU bound deliveries
+     * stay on the application's executor, e.g. VIRTUAL so sleeping deliveries do not park pool threads
+     *
+     * @param blockingStrategy - Executor blocking deliveries run on
+     */
+    public void setUpBlockingExecutor(ExecutorStrategy blockingStrategy) {
+        ExecutorService created = blockingStrategy.create();
+        shutdownBlockingExecutor();
+        this.blockingStrategy = blockingStrategy;
+        this.blockingExecutor = created;
+    }
+
+    /**
+     * Create packages travelling between the headquarters
+     *
+     * @param packageAmount - Amount of packages to create
+     */
+    public void setUpPackages(int packageAmount) {
+        if(headquarters.isEmpty())
+            throw new IllegalStateException("Headquarters must be set up before packages");
+
+        int size = headquarters.size();
+        for(int i = 0; i < packageAmount; i++) {
+            Destination origin = headquarters.get(i % size);
+            Destination destination = headquarters.get((i + 1) % size);
+            packages.add(new Payload<>("Package-" + i, i, origin, destination));
+        }
+    }
+
+    /**
+     * Bound the amount of deliveries that are live at once
+     *
+     * @param maxInFlight - Maximum amount of deliveries running at once
+     * @param queueDepth - Maximum amount of admitted payloads waiting for a running slot
+     * @param rejectionPolicy - What to do with a payload once the window and queue are full
+     */
+    public void setUpPipeline(int maxInFlight, int queueDepth, RejectionPolicy rejectionPolicy) {
+        this.maxInFlight = maxInFlight;
+        this.queueDepth = queueDepth;
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Enforce delivery deadlines
+     * Packages are dispatched earliest deadline first and a package still undelivered at its deadline
+     * is given up on, freeing its worker. Packages without a deadline get one for the run they are admitted in.
+     *
+     * @param deliveryBudget - Time a package without a deadline has to be delivered after it is admitted
+     * @param unit - Unit of the budget
+     */
+    public void setUpDeadlines(long deliveryBudget, TimeUnit unit) {
+        this.deliveryBudgetNanos = unit.toNanos(deliveryBudget);
+        if(timer == null)
+            timer = new HierarchicalTimerWheel(executor);
+    }
+
+    /**
+     * Isolate the headquarters from each other
+     * A headquarters that keeps failing has its circuit opened and its packages fail fast for a while,
+     * and no headquarters may hold more than its share of live deliveries.
+     *
+     * @param failureThreshold - Consecutive failures that open a headquarters' circuit
+     * @param openDuration - Time an open circuit fails packages before letting a probe through
+     * @param unit - Unit of the open duration
+     * @param maxConcurrentPerHeadquarters - Maximum amount of live deliveries to one headquarters
+     */
+    public void setUpIsolation(int failureThreshold, long openDuration, TimeUnit unit, int maxConcurrentPerHeadquarters) {
+        this.guard = new DestinationGuard(registry.capacity(), failureThreshold, openDuration, unit, maxConcurrentPerHeadquarters);
+    }
+
+    /**
+     * Journal every dispatch and delivery, and resume from what an earlier run journaled
+     * The journal is replayed first: packages it shows delivered are not dispatched again and packages
+     * it shows in flight are dispatched again from their last journaled location. Packages are identified
+     * by their position in the source, so a run resumes the same packages or manifest in the same order.
+     *
+     * @param directory - Directory of the journal segments
+     * @throws IOException if the journal could not be replayed or opened
+     */
+    public void setUpJournal(Path directory) throws IOException {
+        // The old journal may be the one being reopened, its claimed events must be on disk before the replay
+        closeJournal();
+        this.replay = null;
+        JournalReplay replayed = new JournalReplay();
+        DeliveryJournal.replay(directory, replayed);
+        this.journal = new DeliveryJournal(directory);
+        this.replay = replayed;
+    }
+
+    public List<Destination> getHeadquarters() {
+        return headquarters;
+    }
+
+    public List<Payload> getPackages() {
+        return packages;
+    }
+
+    public List<Transport> getTrucks() {
+        return trucks;
+    }
+
+    public DestinationRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Get the amount of packages delivered to a headquarters so far
+     *
+     * @param destination - Headquarters interned by this application's registry
+     * @return delivered package count
+     */
+    public long getDelivered(Destination destination) {
+        return deliveredByHeadquarters.get(destination.getId());
+    }
+
+    /**
+     * Get the fleet scheduler of the last startFleet run, to inspect per-truck utilization
+     *
+     * @return the fleet scheduler, null if startFleet was never called
+     */
+    public FleetScheduler getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Get the circuit breakers and bulkheads of the headquarters
+     *
+     * @return the guard, null unless isolation was set up
+     */
+    public DestinationGuard getGuard() {
+        return guard;
+    }
+
+    /**
+     * Get the state rebuilt from the journal when it was set up
+     *
+     * @return the replayed state, null unless a journal was set up
+     */
+    public JournalReplay getReplay() {
+        return replay;
+    }
+
+    /**
+     * Create a load generator delivering between this application's headquarters on its executor
+     *
+     * @return a load generator with default settings
+     */
+    public LoadGenerator createLoadGenerator() {
+        if(headquarters.isEmpty())
+            throw new IllegalStateException("Headquarters must be set up before generating load");
+        return new LoadGenerator(headquarters, executor);
+    }
+
+    public ExecutorStrategy getStrategy() {
+        return strategy;
     }
 
-    public void start() {
+    /**
+     * Dispatch every package onto a truck through a bounded in-flight window
+     * and wait for all of them to be delivered
+     *
+     * @return a report of the run
+     */
+    public DeliveryReport start() {
+        try {
+            return start(packages::forEach);
+        } catch (IOException e) {
+            // The in memory packages are never read from disk
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stream the manifest's packages straight into the delivery pipeline
+     * Only the in-flight window of payloads is ever on the heap
+     *
+     * @param manifest - Manifest file, one "name,origin,destination,contents" package per line
+     * @return a report of the run
+     * @throws IOException if the manifest could not be read
+     */
+    public DeliveryReport start(Path manifest) throws IOException {
+        return start(new ManifestReader(manifest, this::headquarter));
+    }
+
+    /**
+     * Dispatch every payload pushed by the source onto a truck through a bounded in-flight window
+     * and wait for all of them to be delivered
+     *
+     * @param source - Source of the payloads to deliver
+     * @return a report of the run
+     * @throws IOException if the source could not be read
+     */
+    public DeliveryReport start(PayloadSource source) throws IOException {
+        if(trucks.isEmpty())
+            throw new IllegalStateException("Trucks must be set up before starting");
+
+        LongAdder delivered = new LongAdder();
+        LongAdder failed = new LongAdder();
+        LongAdder missed = new LongAdder();
+        // A package that misses its deadline completes with no payload
+        BoundedDeliveryStage stage = new BoundedDeliveryStage(executor, maxInFlight, queueDepth, rejectionPolicy, timer, payload -> null);
+        if(blockingExecutor != null)
+            stage.setBlockingExecutor(blockingExecutor);
+        int truckCount = trucks.size();
+        int[] dispatched = new int[1];
+
+        long start = System.nanoTime();
+        source.forEach(payload -> {
+            int id = dispatched[0]++;
+            if(replay != null && !resume(id, payload))
+                return;
+            // The budget is stamped per run and cleared once the package is done, so the next run stamps it again
+            boolean stamped = timer != null && !payload.hasDeadline();
+            if(stamped)
+                payload.setDeadline(System.nanoTime() + deliveryBudgetNanos);
+            dispatch(stage, trucks.get(id % truckCount), id, payload, stamped, delivered, failed, missed);
+        });
+        try {
+            stage.awaitIdle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return new DeliveryReport(strategy, delivered.sum(), failed.sum(), missed.sum(), System.nanoTime() - start);
+    }
+
+    /**
+     * Deliver every package hop by hop along the planner's routes, sharing trips between packages
+     * and running independent hops in parallel on the executor
+     * With a journal set up, packages it shows delivered are skipped and the ones it shows in flight
+     * are routed again from their origin, the planner only plans whole routes
+     *
+     * @param planner - Planner linking this application's headquarters
+     * @return a report of the run
+     */
+    public DeliveryReport startRouted(RoutePlanner planner) {
+        if(trucks.isEmpty())
+            throw new IllegalStateException("Trucks must be set up before starting");
+
+        List<Payload> routed = new ArrayList<>(packages.size());
+        Map<Payload, Integer> ids = new IdentityHashMap<>();
+        for(int i = 0; i < packages.size(); i++) {
+            Payload payload = packages.get(i);
+            if(replay != null && !resume(i, payload))
+                continue;
+            routed.add(payload);
+            ids.put(payload, i);
+        }
+
+        RoutePlanner.MoveListener listener = (payload, location) -> { };
+        if(journal != null) {
+            for(Payload payload : routed) {
+                journal.dispatched(ids.get(payload), payload.getOrigin());
+            }
+            listener = (payload, location) -> {
+                if(location == payload.getDestination())
+                    journal.delivered(ids.get(payload), location);
+                else
+                    journal.moved(ids.get(payload), location);
+            };
+        }
+
+        long start = System.nanoTime();
+        // A failed hop only fails the packages it and the hops after it carry, the others still arrive
+        planner.schedule(routed, trucks, executor, listener).exceptionally(throwable -> routed).join();
+        long delivered = 0;
+        long failed = 0;
+        for(Payload payload : routed) {
+            if(payload.isDelivered()) {
+                deliveredByHeadquarters.incrementAndGet(payload.getDestination().getId());
+                delivered++;
+            } else {
+                failed++;
+            }
+        }
+
+        return new DeliveryReport(strategy, delivered, failed, System.nanoTime() - start);
+    }
+
+    /**
+     * Deliver every package through a fleet scheduler, where idle trucks steal queued packages
+     * from busy ones instead of the packages being split round-robin up front
+     * With a journal set up, packages it shows delivered are skipped like in {@link #start(PayloadSource)}
+     *
+     * @return a report of the run
+     */
+    public DeliveryReport startFleet() {
+        if(trucks.isEmpty())
+            throw new IllegalStateException("Trucks must be set up before starting");
+
+        LongAdder delivered = new LongAdder();
+        LongAdder failed = new LongAdder();
+        fleet = new FleetScheduler(trucks, executor);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> futures = new ArrayList<>(packages.size());
+        for(int i = 0; i < packages.size(); i++) {
+            int id = i;
+            if(replay != null && !resume(id, packages.get(i)))
+                continue;
+            if(journal != null)
+                journal.dispatched(id, locationOf(packages.get(i)));
+            futures.add(fleet.submit(packages.get(i))
+                    .whenComplete((result, throwable) -> {
+                        if(throwable != null) {
+                            failed.increment();
+                            return;
+                        }
+                        Destination destination = result.getDestination();
+                        result.setCurrentLocation(destination);
+                        if(journal != null)
+                            journal.delivered(id, destination);
+                        if(destination != null && destination.getId() != Destination.UNREGISTERED)
+                            deliveredByHeadquarters.incrementAndGet(destination.getId());
+                        delivered.increment();
+                    }));
+        }
+        // Failures are already counted, only wait for every package
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(throwable -> null).join();
+
+        return new DeliveryReport(strategy, delivered.sum(), failed.sum(), System.nanoTime() - start);
+    }
+
+    // Returns false if the journal shows the payload delivered, restores its location if it was in flight
+    private boolean resume(int id, Payload payload) {
+        if(replay.isDelivered(id)) {
+            payload.setCurrentLocation(payload.getDestination());
+            return false;
+        }
+        if(replay.isInFlight(id)) {
+            int location = replay.getLocation(id);
+            Destination restored = location == Destination.UNREGISTERED ? null : registry.get(location);
+            if(restored != null)
+                payload.setCurrentLocation(restored);
+        }
+        return true;
+    }
 
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
     }
 
-    public static void main(String[] args) {
-        PackageDeliveryApplication app = new PackageDeliveryApplication();
-        app.start();
+    // A package that never moved is still at its origin
+    private static Destination locationOf(Payload payload) {
+        Destination current = payload.getCurrentLocation();
+        return current != null ? current : payload.getOrigin();
+    }
+
+    /**
+     * Deliver every package with the headquarters split into shards, each on its own thread with its own
+     * trucks, handing packages between shards through lock-free queues instead of a shared executor
+     *
+     * @param shardCount - Amount of shards, at most the amount of headquarters to keep every shard busy
+     * @return a report of the run
+     */
+    public DeliveryReport startSharded(int shardCount) {
+        if(trucks.isEmpty())
+            throw new IllegalStateException("Trucks must be set up before starting");
+
+        try(ShardedDelivery sharded = new ShardedDelivery(shardCount, trucks, 1_024)) {
+            long start = System.nanoTime();
+            long delivered = sharded.deliver(packages);
+            long elapsed = System.nanoTime() - start;
+            // Counted after the run so shards never write the shared counters
+            for(Payload payload : packages) {
+                Destination destination = payload.getDestination();
+                if(payload.isDelivered() && destination != null && destination.getId() != Destination.UNREGISTERED)
+                    deliveredByHeadquarters.incrementAndGet(destination.getId());
+            }
+            return new DeliveryReport(ExecutorStrategy.PINNED, delivered, sharded.getFailed(), elapsed);
+        }
+    }
+
+    private void dispatch(BoundedDeliveryStage stage, Transport truck, int id, Payload payload, boolean stamped,
+                          LongAdder delivered, LongAdder failed, LongAdder missed) {
+        Destination target = payload.getDestination();
+        int guarded = guard != null && target != null ? target.getId() : Destination.UNREGISTERED;
+        // A tripped or saturated headquarters fails fast instead of taking slots from the healthy ones
+        if(guarded != Destination.UNREGISTERED && !guard.tryAcquire(guarded)) {
+            if(stamped)
+                payload.setDeadline(Payload.NO_DEADLINE);
+            failed.increment();
+            return;
+        }
+
+        if(journal != null)
+            journal.dispatched(id, locationOf(payload));
+        stage.submit(truck, payload)
+                .whenComplete((result, throwable) -> {
+                    if(stamped)
+                        payload.setDeadline(Payload.NO_DEADLINE);
+                    if(guarded != Destination.UNREGISTERED) {
+                        // A payload the full stage turned away says nothing about the headquarters
+                        if(throwable == null && result != null)
+                            guard.onSuccess(guarded);
+                        else if(unwrap(throwable) instanceof RejectedExecutionException)
+                            guard.release(guarded);
+                        else
+                            guard.onFailure(guarded);
+                    }
+                    if(throwable != null) {
+                        failed.increment();
+                        return;
+                    }
+                    if(result == null) {
+                        missed.increment();
+                        return;
+                    }
+                    Destination destination = result.getDestination();
+                    result.setCurrentLocation(destination);
+                    if(journal != null)
+                        journal.delivered(id, destination);
+                    if(destination != null && destination.getId() != Destination.UNREGISTERED)
+                        deliveredByHeadquarters.incrementAndGet(destination.getId());
+                    delivered.increment();
+                });
+    }
+
+    /**
+     * Release the executors owned by this application
+     */
+    public void shutdown() {
+        if(timer != null)
+            timer.close();
+        closeJournal();
+        shutdownBlockingExecutor();
+        if(!strategy.isShared())
+            shutdown(executor);
+    }
+
+    private void closeJournal() {
+        if(journal == null)
+            return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            journal = null;
+        }
+    }
+
+    private void shutdownBlockingExecutor() {
+        if(blockingExecutor != null && !blockingStrategy.isShared())
+            shutdown(blockingExecutor);
+        blockingExecutor = null;
+    }
+
+    // Runs each arrival rate in turn and stops at the first one the executor cannot sustain
+    private static void soak(String[] args) {
+        ExecutorStrategy strategy = args.length > 1 ? ExecutorStrategy.valueOf(args[1]) : ExecutorStrategy.COMMON_POOL;
+        String[] rates = (args.length > 2 ? args[2] : "1000,2000,4000,8000,16000,32000,64000").split(",");
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 1_000;
+        double skew = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+        double failureRate = args.length > 6 ? Double.parseDouble(args[6]) : 0;
+        int headquartersAmount = args.length > 7 ? Integer.parseInt(args[7]) : 8;
+
+        PackageDeliveryApplication app = new PackageDeliveryApplication(strategy);
+        app.setUpHeadquarters(headquartersAmount);
+        try {
+            for(String rate : rates) {
+                LoadGenerator generator = app.createLoadGenerator();
+                generator.setArrivalRate(Double.parseDouble(rate));
+                generator.setPayloadSize(iterations);
+                generator.setDestinationSkew(skew);
+                generator.setFailureRate(failureRate);
+                LoadReport report = generator.run(seconds, TimeUnit.SECONDS);
+                System.out.println(strategy + " " + report);
+                if(!report.isSustained())
+                    break;
+            }
+        } finally {
+            app.shutdown();
+        }
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Usage: PackageDeliveryApplication [strategy] [packages|manifest file] [trucks] [iterations] [headquarters]
+     *    or: PackageDeliveryApplication soak [strategy] [arrivals/s,...] [seconds] [mean iterations] [skew] [failure rate] [headquarters]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("soak")) {
+            soak(args);
+            return;
+        }
+        ExecutorStrategy strategy = args.length > 0 ? ExecutorStrategy.valueOf(args[0]) : ExecutorStrategy.COMMON_POOL;
+        String packages = args.length > 1 ? args[1] : "100000";
+        int truckAmount = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 1_000;
+        int headquartersAmount = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+
+        PackageDeliveryApplication app = new PackageDeliveryApplication(strategy);
+        app.setUpHeadquarters(headquartersAmount);
+        app.setUpTrucks(truckAmount, iterations);
+        try {
+            if(packages.chars().allMatch(Character::isDigit)) {
+                app.setUpPackages(Integer.parseInt(packages));
+                System.out.println(app.start());
+            } else {
+                System.out.println(app.start(Paths.get(packages)));
+            }
+        } finally {
+            app.shutdown();
+        }
     }
 }
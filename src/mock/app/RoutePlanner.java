@@ -0,0 +1,271 @@
+package mock.app;
+
+import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Moves payloads through intermediate headquarters, one Transport trip per hop
+ * Every payload's shortest route is split into hops, and the hops of all payloads form a DAG of
+ * CompletableFuture stages: a hop waits only for the hops that bring its payloads in, so independent
+ * hops run in parallel. Payloads taking the same road at the same step of their route share one
+ * trip, their bundles merged with thenCombine as the feeding hops complete.
+ */
+public class RoutePlanner {
+    private final DestinationRegistry registry;
+    // Roads out of each headquarters, indexed by destination id
+    private final int[][] roads;
+    private final int[] roadCount;
+    private final Map<Long, Destination[]> routes;
+    // Search scratch space, only used while holding the planner's lock
+    private final int[] previous;
+    private final int[] frontier;
+
+    /**
+     * Notified every time a scheduled payload arrives at a headquarters of its route
+     */
+    @FunctionalInterface
+    public interface MoveListener {
+
+        /**
+         * Called on the thread that ran the hop, possibly for several payloads at once
+         *
+         * @param payload - Payload that moved
+         * @param location - Headquarters it is now at, its destination once it arrived
+         */
+        void moved(Payload payload, Destination location);
+    }
+
+    /**
+     * @param registry - Registry that interned every headquarters that will be linked
+     */
+    public RoutePlanner(DestinationRegistry registry) {
+        this.registry = registry;
+        this.roads = new int[registry.capacity()][];
+        this.roadCount = new int[registry.capacity()];
+        this.routes = new HashMap<>();
+        this.previous = new int[registry.capacity()];
+        this.frontier = new int[registry.capacity()];
+    }
+
+    /**
+     * Add a two way road between two headquarters
+     *
+     * @param first - Interned headquarters
+     * @param second - Interned headquarters
+     */
+    public synchronized void link(Destination first, Destination second) {
+        addRoad(idOf(first), idOf(second));
+        addRoad(idOf(second), idOf(first));
+        routes.clear();
+    }
+
+    private void addRoad(int from, int to) {
+        if(roads[from] == null)
+            roads[from] = new int[4];
+        else if(roadCount[from] == roads[from].length)
+            roads[from] = Arrays.copyOf(roads[from], roadCount[from] * 2);
+        roads[from][roadCount[from]++] = to;
+    }
+
+    /**
+     * Find the route with the fewest hops between two headquarters
+     *
+     * @param from - Interned start headquarters
+     * @param to - Interned final headquarters
+     * @return every headquarters on the route, from and to included
+     * @throws IllegalArgumentException if no route exists
+     */
+    public synchronized List<Destination> route(Destination from, Destination to) {
+        return Collections.unmodifiableList(Arrays.asList(cachedRoute(from, to)));
+    }
+
+    private Destination[] cachedRoute(Destination from, Destination to) {
+        int start = idOf(from);
+        int end = idOf(to);
+        long key = (long) start * registry.capacity() + end;
+        Destination[] route = routes.get(key);
+        if(route == null) {
+            route = search(start, end);
+            routes.put(key, route);
+        }
+        return route;
+    }
+
+    // Breadth first search over the dense ids
+    private Destination[] search(int start, int end) {
+        // Only the interned ids can be reached
+        int size = registry.size();
+        Arrays.fill(previous, 0, size, -1);
+        int head = 0;
+        int tail = 0;
+        frontier[tail++] = start;
+        previous[start] = start;
+
+        while(head < tail && previous[end] == -1) {
+            int current = frontier[head++];
+            for(int i = 0; i < roadCount[current]; i++) {
+                int next = roads[current][i];
+                if(previous[next] == -1) {
+                    previous[next] = current;
+                    frontier[tail++] = next;
+                }
+            }
+        }
+        if(previous[end] == -1)
+            throw new IllegalArgumentException("No route from " + registry.get(start) + " to " + registry.get(end));
+
+        int length = 1;
+        for(int id = end; id != start; id = previous[id]) {
+            length++;
+        }
+        Destination[] route = new Destination[length];
+        for(int id = end, i = length - 1; i >= 0; id = previous[id], i--) {
+            route[i] = registry.get(id);
+        }
+        return route;
+    }
+
+    /**
+     * Deliver every payload along its route
+     *
+     * @param payloads - Payloads with interned origin and destination
+     * @param trucks - Trucks the hops are spread over
+     * @param executor - Executor the hops run on
+     * @return a future completed with the payloads once every one of them reached its destination
+     */
+    public CompletableFuture<List<Payload>> schedule(List<Payload> payloads, List<Transport> trucks, Executor executor) {
+        return schedule(payloads, trucks, executor, (payload, location) -> { });
+    }
+
+    /**
+     * Deliver every payload along its route, reporting each headquarters it reaches
+     *
+     * @param payloads - Payloads with interned origin and destination
+     * @param trucks - Trucks the hops are spread over
+     * @param executor - Executor the hops run on
+     * @param listener - Listener told about every location change, after the payload's current location is set
+     * @return a future completed with the payloads once every one of them reached its destination
+     */
+    public CompletableFuture<List<Payload>> schedule(List<Payload> payloads, List<Transport> trucks, Executor executor, MoveListener listener) {
+        if(trucks.isEmpty())
+            throw new IllegalArgumentException("At least one truck is needed");
+
+        // Group every payload's hops by road and step, levels.get(step) holds the hops of that step
+        List<Map<Long, Hop>> levels = new ArrayList<>();
+        synchronized (this) {
+            for(Payload payload : payloads) {
+                Destination[] route = cachedRoute(payload.getOrigin(), payload.getDestination());
+                if(route.length == 1) {
+                    payload.setCurrentLocation(payload.getDestination());
+                    listener.moved(payload, payload.getDestination());
+                }
+                for(int step = 0; step < route.length - 1; step++) {
+                    if(levels.size() == step)
+                        levels.add(new HashMap<>());
+                    long road = (long) route[step].getId() * registry.capacity() + route[step + 1].getId();
+                    Hop hop = levels.get(step).get(road);
+                    if(hop == null) {
+                        hop = new Hop(route[step], route[step + 1], step);
+                        levels.get(step).put(road, hop);
+                    }
+                    hop.carried.add(payload);
+                    if(step > 0) {
+                        long previousRoad = (long) route[step - 1].getId() * registry.capacity() + route[step].getId();
+                        Hop feeding = levels.get(step - 1).get(previousRoad);
+                        if(!hop.feeding.contains(feeding))
+                            hop.feeding.add(feeding);
+                    }
+                }
+            }
+        }
+
+        // Steps are created in order, so every feeding hop already has its future
+        List<CompletableFuture<Payload<Void>>> trips = new ArrayList<>();
+        int truck = 0;
+        for(Map<Long, Hop> level : levels) {
+            for(Hop hop : level.values()) {
+                hop.trip = schedule(hop, trucks.get(truck++ % trucks.size()), executor, listener);
+                trips.add(hop.trip);
+            }
+        }
+
+        return CompletableFuture.allOf(trips.toArray(new CompletableFuture<?>[0])).thenApply(done -> payloads);
+    }
+
+    private CompletableFuture<Payload<Void>> schedule(Hop hop, Transport truck, Executor executor, MoveListener listener) {
+        Payload<Void> carrier = new Payload<>(hop.toString(), null, hop.from, hop.to);
+        CompletableFuture<Payload<Void>> loaded;
+        if(hop.step == 0) {
+            for(Payload payload : hop.carried) {
+                carrier.addBundle(payload);
+            }
+            loaded = CompletableFuture.completedFuture(carrier);
+        } else {
+            // Merge the bundles of the incoming trips, keeping only the payloads that take this road
+            loaded = CompletableFuture.completedFuture(carrier);
+            for(Hop feeding : hop.feeding) {
+                loaded = loaded.thenCombine(feeding.trip, (outgoing, incoming) -> {
+                    for(Payload payload : incoming.getBundle()) {
+                        if(hop.carried.contains(payload))
+                            outgoing.addBundle(payload);
+                    }
+                    return outgoing;
+                });
+            }
+        }
+
+        return loaded.thenApplyAsync(outgoing -> {
+            truck.deliveryPayload(outgoing);
+            for(Payload payload : outgoing.getBundle()) {
+                payload.setCurrentLocation(hop.to);
+                listener.moved(payload, hop.to);
+            }
+            outgoing.setCurrentLocation(hop.to);
+            return outgoing;
+        }, executor);
+    }
+
+    private int idOf(Destination destination) {
+        if(destination == null || destination.getId() == Destination.UNREGISTERED || registry.get(destination.getId()) != destination)
+            throw new IllegalArgumentException("Destination " + destination + " is not interned by this planner's registry");
+        return destination.getId();
+    }
+
+    /**
+     * One trip over a road at a given step of the routes using it
+     */
+    private static class Hop {
+        private final Destination from;
+        private final Destination to;
+        private final int step;
+        private final Set<Payload> carried;
+        private final List<Hop> feeding;
+        private CompletableFuture<Payload<Void>> trip;
+
+        private Hop(Destination from, Destination to, int step) {
+            this.from = from;
+            this.to = to;
+            this.step = step;
+            this.carried = Collections.newSetFromMap(new IdentityHashMap<>());
+            this.feeding = new ArrayList<>(2);
+        }
+
+        @Override
+        public String toString() {
+            return "Hop " + from + " -> " + to + " #" + step;
+        }
+    }
+}
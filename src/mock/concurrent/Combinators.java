@@ -0,0 +1,241 @@
+package mock.concurrent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+/**
+ * Fan-in combinators over large collections of futures
+ * Unlike chaining thenCombine, which needs one intermediate future per pair, every combinator here
+ * completes a single future through shared counters. They short-circuit: as soon as the outcome is known
+ * the combined future completes and the futures still running are cancelled, which also interrupts
+ * their workers when they are InterruptibleFutures.
+ */
+public final class Combinators {
+
+    private Combinators() {
+    }
+
+    /**
+     * Wait for every future and collect their results
+     * The first failure fails the combined future at once instead of after all the others have finished.
+     *
+     * @param futures - Futures to combine
+     * @return a future completed with the results in the order of the futures, with progress counters
+     */
+    public static <T> Gather<T> allOf(List<? extends CompletableFuture<? extends T>> futures) {
+        return new Gather<T>(futures, futures.size(), true).start();
+    }
+
+    /**
+     * Wait for the first n futures to succeed
+     * The combined future fails once so many futures failed that n successes are out of reach.
+     *
+     * @param futures - Futures to combine
+     * @param n - Amount of successes needed
+     * @return a future completed with the first n results in completion order, with progress counters
+     */
+    public static <T> Gather<T> anyN(List<? extends CompletableFuture<? extends T>> futures, int n) {
+        if(n < 0 || n > futures.size())
+            throw new IllegalArgumentException("Cannot wait for " + n + " of " + futures.size() + " futures");
+        return new Gather<T>(futures, n, false).start();
+    }
+
+    /**
+     * Get the result of the first future to succeed, failures are ignored unless every future fails
+     *
+     * @param futures - Futures to combine
+     * @return a future completed with the first successful result, or with the last failure
+     */
+    public static <T> CompletableFuture<T> firstSuccessful(List<? extends CompletableFuture<? extends T>> futures) {
+        if(futures.isEmpty())
+            return CompletableFuture.failedFuture(new NoSuchElementException("No future to wait for"));
+        return anyN(futures, 1).thenApply(results -> results.get(0));
+    }
+
+    /**
+     * Merge the results of every future pairwise, in parallel, as they arrive
+     * Any two available results are merged on the executor and the merged value becomes available again,
+     * so the merges form a tree whose shape follows the completion order and independent pairs merge
+     * at the same time. The merge must be associative and commutative.
+     *
+     * @param futures - Futures to reduce
+     * @param identity - Result when there are no futures
+     * @param merge - Merges two results
+     * @param executor - Executor the merges run on
+     * @return a future completed with the merged result
+     */
+    public static <T> CompletableFuture<T> reduce(List<? extends CompletableFuture<? extends T>> futures, T identity,
+                                                  BinaryOperator<T> merge, Executor executor) {
+        if(futures.isEmpty())
+            return CompletableFuture.completedFuture(identity);
+        return new Reduction<T>(futures, merge, executor).start();
+    }
+
+    private static void cancelAll(List<? extends CompletableFuture<?>> futures) {
+        for(CompletableFuture<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    /**
+     * The combined future of allOf and anyN, which also reports how far the combination has come
+     */
+    public static class Gather<T> extends CompletableFuture<List<T>> {
+        private final List<? extends CompletableFuture<? extends T>> futures;
+        private final int needed;
+        private final boolean ordered;
+        private final Object[] results;
+        // Result slots handed out to successes when results are kept in completion order
+        private final AtomicInteger claimed;
+        private final AtomicInteger filled;
+        private final AtomicInteger failed;
+
+        private Gather(List<? extends CompletableFuture<? extends T>> futures, int needed, boolean ordered) {
+            this.futures = futures;
+            this.needed = needed;
+            this.ordered = ordered;
+            this.results = new Object[needed];
+            this.claimed = new AtomicInteger();
+            this.filled = new AtomicInteger();
+            this.failed = new AtomicInteger();
+        }
+
+        private Gather<T> start() {
+            if(needed == 0) {
+                complete(Collections.emptyList());
+                return this;
+            }
+            // Once the outcome is known, whatever is still running is abandoned
+            whenComplete((result, throwable) -> cancelAll(futures));
+            for(int i = 0; i < futures.size() && !isDone(); i++) {
+                int index = i;
+                futures.get(i).whenComplete((result, throwable) -> {
+                    if(throwable == null)
+                        succeeded(index, result);
+                    else
+                        failed(throwable);
+                });
+            }
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void succeeded(int index, T result) {
+            int slot = ordered ? index : claimed.getAndIncrement();
+            if(slot >= needed)
+                return;
+            results[slot] = result;
+            // The last slot to be filled sees every other slot's write through the counter
+            if(filled.incrementAndGet() == needed)
+                complete((List<T>) Arrays.asList(results));
+        }
+
+        private void failed(Throwable throwable) {
+            if(failed.incrementAndGet() > futures.size() - needed)
+                completeExceptionally(unwrap(throwable));
+        }
+
+        /**
+         * Get the amount of futures that have succeeded and count towards the result
+         *
+         * @return collected result count
+         */
+        public int getCompleted() {
+            return filled.get();
+        }
+
+        /**
+         * Get the amount of futures that have failed
+         *
+         * @return failed future count
+         */
+        public int getFailed() {
+            return failed.get();
+        }
+    }
+
+    private static class Reduction<T> extends CompletableFuture<T> {
+        private final List<? extends CompletableFuture<? extends T>> futures;
+        private final BinaryOperator<T> merge;
+        private final Executor executor;
+        private final ConcurrentLinkedQueue<T> ready;
+        // One token per value in the ready queue, two tokens are claimed before polling a pair
+        private final AtomicInteger available;
+        private final AtomicInteger remainingMerges;
+
+        private Reduction(List<? extends CompletableFuture<? extends T>> futures, BinaryOperator<T> merge, Executor executor) {
+            this.futures = futures;
+            this.merge = merge;
+            this.executor = executor;
+            this.ready = new ConcurrentLinkedQueue<>();
+            this.available = new AtomicInteger();
+            this.remainingMerges = new AtomicInteger(futures.size() - 1);
+        }
+
+        private Reduction<T> start() {
+            whenComplete((result, throwable) -> {
+                if(throwable != null)
+                    cancelAll(futures);
+            });
+            for(int i = 0; i < futures.size() && !isDone(); i++) {
+                futures.get(i).whenComplete((result, throwable) -> {
+                    if(throwable != null)
+                        completeExceptionally(unwrap(throwable));
+                    else if(futures.size() == 1)
+                        complete(result);
+                    else
+                        offer(result);
+                });
+            }
+            return this;
+        }
+
+        private void offer(T value) {
+            ready.add(value);
+            available.incrementAndGet();
+            while(!isDone()) {
+                int count = available.get();
+                if(count < 2)
+                    return;
+                if(!available.compareAndSet(count, count - 2))
+                    continue;
+                T first = ready.poll();
+                T second = ready.poll();
+                try {
+                    executor.execute(() -> merged(first, second));
+                } catch (RejectedExecutionException e) {
+                    completeExceptionally(e);
+                }
+            }
+        }
+
+        private void merged(T first, T second) {
+            if(isDone())
+                return;
+            T value;
+            try {
+                value = merge.apply(first, second);
+            } catch (Throwable throwable) {
+                completeExceptionally(throwable);
+                return;
+            }
+            if(remainingMerges.decrementAndGet() == 0)
+                complete(value);
+            else
+                offer(value);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package mock.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One shared timer for a very large amount of deadlines
+ * Deadlines are hashed into a hierarchy of 64 slot wheels, each level covering 64 times the range of
+ * the one below, and cascade down as time passes. Scheduling and cancelling are O(1) and allocate a
+ * single Timeout, instead of a heap entry per deadline like ScheduledThreadPoolExecutor.
+ * A single daemon thread advances the wheels, expired tasks are handed to the expiry executor.
+ * Cancelled timeouts are dropped lazily when their slot is reached.
+ * Closing the wheel cancels every pending timeout, so nothing waits on a deadline that can no longer fire.
+ */
+public class HierarchicalTimerWheel implements AutoCloseable {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Executor expiryExecutor;
+    private final ConcurrentLinkedQueue<Timeout> incoming;
+    private final ArrayDeque<Timeout>[][] wheels;
+    // Deadlines past the range of the top level, re-examined whenever the top level wraps
+    private final ArrayDeque<Timeout> overflow;
+    private final Thread worker;
+    private volatile boolean running;
+    // Only read and written by the worker thread
+    private long currentTick;
+
+    public HierarchicalTimerWheel(Executor expiryExecutor) {
+        this(1, TimeUnit.MILLISECONDS, expiryExecutor);
+    }
+
+    /**
+     * @param tick - Resolution of the wheel, deadlines fire at most one tick late
+     * @param unit - Unit of the tick
+     * @param expiryExecutor - Executor expired tasks run on
+     */
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimerWheel(long tick, TimeUnit unit, Executor expiryExecutor) {
+        this.tickNanos = Math.max(1, unit.toNanos(tick));
+        this.expiryExecutor = expiryExecutor;
+        this.incoming = new ConcurrentLinkedQueue<>();
+        this.wheels = new ArrayDeque[LEVELS][WHEEL_SIZE];
+        for(int level = 0; level < LEVELS; level++) {
+            for(int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheels[level][slot] = new ArrayDeque<>();
+            }
+        }
+        this.overflow = new ArrayDeque<>();
+        this.running = true;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, "timer-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Run the task once the deadline has passed
+     * Thread-safe
+     *
+     * @param task - Task to run on the expiry executor
+     * @param deadlineNanos - System.nanoTime() based deadline
+     * @return a handle that can cancel the task
+     */
+    public Timeout schedule(Runnable task, long deadlineNanos) {
+        return schedule(task, null, deadlineNanos);
+    }
+
+    private Timeout schedule(Runnable task, Runnable onClose, long deadlineNanos) {
+        if(!running)
+            throw new IllegalStateException("Timer wheel is closed");
+
+        Timeout timeout = new Timeout(task, onClose, deadlineNanos);
+        incoming.add(timeout);
+        // Closed meanwhile, the worker may already have cancelled what was pending
+        if(!running && timeout.cancel())
+            throw new IllegalStateException("Timer wheel is closed");
+        return timeout;
+    }
+
+    /**
+     * Complete the future with the fallback value if it is still incomplete at the deadline
+     * Unlike CompletableFuture.completeOnTimeout, no per-future entry is added to the JDK's delay scheduler
+     * If the wheel is closed before the deadline, the future is cancelled instead
+     *
+     * @param future - Future to complete
+     * @param fallback - Value the future is completed with once the deadline passes
+     * @param deadlineNanos - System.nanoTime() based deadline
+     * @return the given future
+     */
+    public <T> CompletableFuture<T> completeOnDeadline(CompletableFuture<T> future, T fallback, long deadlineNanos) {
+        Timeout timeout = schedule(() -> future.complete(fallback), () -> future.cancel(false), deadlineNanos);
+        future.whenComplete((result, throwable) -> timeout.cancel());
+        return future;
+    }
+
+    private void run() {
+        while(running) {
+            long now = System.nanoTime();
+            long nowTick = (now - startNanos) / tickNanos;
+            while(currentTick < nowTick) {
+                advance();
+            }
+
+            Timeout timeout;
+            while((timeout = incoming.poll()) != null) {
+                if(!timeout.isCancelled())
+                    insert(timeout);
+            }
+
+            long nextTickNanos = startNanos + (currentTick + 1) * tickNanos;
+            LockSupport.parkNanos(nextTickNanos - System.nanoTime());
+        }
+
+        Timeout timeout;
+        while((timeout = incoming.poll()) != null) {
+            timeout.close();
+        }
+        for(ArrayDeque<Timeout>[] wheel : wheels) {
+            for(ArrayDeque<Timeout> bucket : wheel) {
+                while((timeout = bucket.poll()) != null) {
+                    timeout.close();
+                }
+            }
+        }
+        while((timeout = overflow.poll()) != null) {
+            timeout.close();
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        long elapsed = timeout.deadlineNanos - startNanos;
+        // Round up so a timeout never fires before its deadline
+        long deadlineTick = elapsed <= 0 ? 0 : (elapsed + tickNanos - 1) / tickNanos;
+        if(deadlineTick <= currentTick) {
+            expire(timeout);
+            return;
+        }
+
+        // The lowest level whose parent slot is shared by now and the deadline
+        for(int level = 0; level < LEVELS; level++) {
+            int parentShift = WHEEL_BITS * (level + 1);
+            if((deadlineTick >>> parentShift) == (currentTick >>> parentShift)) {
+                int slot = (int) (deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+                wheels[level][slot].add(timeout);
+                return;
+            }
+        }
+        overflow.add(timeout);
+    }
+
+    private void advance() {
+        currentTick++;
+
+        // Cascade every level whose slot has just started, from the top down
+        if((currentTick & ((1L << (WHEEL_BITS * LEVELS)) - 1)) == 0)
+            cascade(overflow);
+        for(int level = LEVELS - 1; level > 0; level--) {
+            int shift = WHEEL_BITS * level;
+            if((currentTick & ((1L << shift) - 1)) == 0)
+                cascade(wheels[level][(int) (currentTick >>> shift) & WHEEL_MASK]);
+        }
+
+        ArrayDeque<Timeout> bucket = wheels[0][(int) currentTick & WHEEL_MASK];
+        Timeout timeout;
+        while((timeout = bucket.poll()) != null) {
+            expire(timeout);
+        }
+    }
+
+    private void cascade(ArrayDeque<Timeout> bucket) {
+        int size = bucket.size();
+        for(int i = 0; i < size; i++) {
+            Timeout timeout = bucket.poll();
+            if(!timeout.isCancelled())
+                insert(timeout);
+        }
+    }
+
+    private void expire(Timeout timeout) {
+        if(!timeout.expire())
+            return;
+        try {
+            expiryExecutor.execute(timeout.task);
+        } catch (RuntimeException e) {
+            // A rejected expiry must not stop the wheel
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the wheel and cancel every pending timeout, waiting for the worker to finish unless called from an expired task
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        if(Thread.currentThread() == worker)
+            return;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A scheduled task that can be cancelled until it has expired
+     */
+    public static class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final Runnable task;
+        // Run instead of the task when the wheel is closed first, may be null
+        private final Runnable onClose;
+        private final long deadlineNanos;
+        private volatile int state;
+
+        private Timeout(Runnable task, Runnable onClose, long deadlineNanos) {
+            this.task = task;
+            this.onClose = onClose;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Prevent the task from running
+         *
+         * @return True if cancelled before expiring, false otherwise
+         */
+        public boolean cancel() {
+            return STATE.compareAndSet(this, PENDING, CANCELLED);
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        public long getDeadlineNanos() {
+            return deadlineNanos;
+        }
+
+        private boolean expire() {
+            return STATE.compareAndSet(this, PENDING, EXPIRED);
+        }
+
+        private void close() {
+            if(cancel() && onClose != null)
+                onClose.run();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package mock.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A CompletableFuture whose cancel(true) actually interrupts the task computing it
+ * Plain CompletableFuture ignores mayInterruptIfRunning, leaving cancelled work to burn a pool thread.
+ *
+ * Cancellation also travels upstream: cancelling a dependent stage created from this future
+ * (thenApply, handle, thenCombine, thenAcceptBoth, applyToEither...) cancels the stages it was created from,
+ * both inputs for the two-stage methods, so the whole abandoned pipeline stops. A source that still has
+ * other dependents running keeps going, so cancelling one branch never kills its siblings. An input that
+ * is a plain CompletableFuture is cancelled as well, its other dependents cannot be seen.
+ * Downstream stages are completed with a CancellationException as usual.
+ * A dependent forgets its sources once it completes, completed stages never keep their upstream reachable.
+ *
+ * @param <T>
+ */
+public class InterruptibleFuture<T> extends CompletableFuture<T> {
+    private final WorkerHandle worker;
+    private final ConcurrentLinkedQueue<CompletionStage<?>> sources;
+    // Dependents created from this future that have not completed yet
+    private final AtomicInteger dependents;
+    private volatile boolean interruptSources;
+    // Set while the completion hook of a new dependent is attached, only read by the thread attaching it
+    private boolean hooking;
+
+    public InterruptibleFuture() {
+        this(null);
+    }
+
+    private InterruptibleFuture(WorkerHandle worker) {
+        this.worker = worker;
+        this.sources = new ConcurrentLinkedQueue<>();
+        this.dependents = new AtomicInteger();
+    }
+
+    /**
+     * Run the supplier on the executor, interrupting it if the returned future is cancelled
+     *
+     * @param supplier - Work computing the result, should stop when its thread is interrupted
+     * @param executor - Executor the work runs on
+     * @return a future completed with the supplier's result
+     */
+    public static <T> InterruptibleFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        WorkerHandle worker = new WorkerHandle();
+        InterruptibleFuture<T> future = new InterruptibleFuture<>(worker);
+        try {
+            executor.execute(() -> {
+                // Cancelled before it started
+                if(!worker.enter())
+                    return;
+                try {
+                    future.complete(supplier.get());
+                } catch (Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                } finally {
+                    worker.exit();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Cancel this future, interrupt its running task and cancel the stages it depends on
+     * that no other running stage depends on
+     *
+     * @param mayInterruptIfRunning - True to interrupt the running task
+     * @return True if this future is now cancelled
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        interruptSources = mayInterruptIfRunning;
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if(cancelled) {
+            if(worker != null && mayInterruptIfRunning)
+                worker.abort();
+            release();
+        }
+        return cancelled;
+    }
+
+    /**
+     * Every dependent stage remembers this future as its source until it completes
+     */
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        // The completion hook's own stage is not tracked
+        if(hooking)
+            return new CompletableFuture<>();
+
+        InterruptibleFuture<U> dependent = new InterruptibleFuture<>();
+        dependent.hooking = true;
+        dependent.whenComplete((result, throwable) -> dependent.release());
+        dependent.hooking = false;
+        dependent.link(this);
+        return dependent;
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombine(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return linked(super.thenCombine(other, fn), other);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return linked(super.thenCombineAsync(other, fn), other);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn, Executor executor) {
+        return linked(super.thenCombineAsync(other, fn, executor), other);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBoth(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return linked(super.thenAcceptBoth(other, action), other);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return linked(super.thenAcceptBothAsync(other, action), other);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action, Executor executor) {
+        return linked(super.thenAcceptBothAsync(other, action, executor), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
+        return linked(super.runAfterBoth(other, action), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+        return linked(super.runAfterBothAsync(other, action), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return linked(super.runAfterBothAsync(other, action, executor), other);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEither(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return linked(super.applyToEither(other, fn), other);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return linked(super.applyToEitherAsync(other, fn), other);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn, Executor executor) {
+        return linked(super.applyToEitherAsync(other, fn, executor), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEither(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return linked(super.acceptEither(other, action), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return linked(super.acceptEitherAsync(other, action), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action, Executor executor) {
+        return linked(super.acceptEitherAsync(other, action, executor), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
+        return linked(super.runAfterEither(other, action), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+        return linked(super.runAfterEitherAsync(other, action), other);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return linked(super.runAfterEitherAsync(other, action, executor), other);
+    }
+
+    private static <V> CompletableFuture<V> linked(CompletableFuture<V> combined, CompletionStage<?> other) {
+        ((InterruptibleFuture<V>) combined).link(other);
+        return combined;
+    }
+
+    private void link(CompletionStage<?> source) {
+        if(source instanceof InterruptibleFuture)
+            ((InterruptibleFuture<?>) source).dependents.incrementAndGet();
+        sources.add(source);
+        // Completed before the source was linked, the hook has already run
+        if(isDone())
+            release();
+    }
+
+    // Drop the links to the sources, cancelling the ones this was the last running dependent of if this was cancelled
+    private void release() {
+        boolean cancelled = isCancelled();
+        CompletionStage<?> source;
+        while((source = sources.poll()) != null) {
+            if(source instanceof InterruptibleFuture) {
+                InterruptibleFuture<?> upstream = (InterruptibleFuture<?>) source;
+                if(upstream.dependents.decrementAndGet() == 0 && cancelled)
+                    upstream.cancel(interruptSources);
+            } else if(cancelled) {
+                source.toCompletableFuture().cancel(interruptSources);
+            }
+        }
+    }
+}
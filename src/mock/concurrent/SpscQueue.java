@@ -0,0 +1,103 @@
+package mock.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A bounded lock-free queue for exactly one producer thread and one consumer thread
+ *
+ * Each side owns its index and only reads the other side's index when its cached copy says the
+ * queue looks full or empty, so in steady state neither thread touches the other's cache line.
+ * Each index shares a cache line only with its owner's cached copy of the other index: the two pairs
+ * live 128 bytes apart in one array, padded from the array header and from its end, which keeps the
+ * producer's and the consumer's writes off each other's cache lines and off the read-only buffer and
+ * mask whatever field layout the JVM picks. The release store of an index publishes the slots before it.
+ */
+public class SpscQueue<E> {
+    private static final VarHandle INDEX = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int TAIL = 16;
+    // Producer's copy of the head, next to the tail
+    private static final int HEAD_CACHE = TAIL + 1;
+    private static final int HEAD = 32;
+    // Consumer's copy of the tail, next to the head
+    private static final int TAIL_CACHE = HEAD + 1;
+
+    private final Object[] buffer;
+    private final int mask;
+    // Padded producer and consumer indexes and their cached copies, see TAIL and HEAD
+    private final long[] indexes;
+
+    /**
+     * @param capacity - Maximum amount of queued elements, rounded up to a power of two
+     */
+    public SpscQueue(int capacity) {
+        if(capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive");
+
+        int size = 1;
+        while(size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+        this.indexes = new long[HEAD + 16];
+    }
+
+    /**
+     * Add an element, only ever called by the producer thread
+     *
+     * @param element - Element to add
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+        if(element == null)
+            throw new NullPointerException("Queue does not accept null elements");
+
+        long tail = indexes[TAIL];
+        if(tail - indexes[HEAD_CACHE] > mask) {
+            long head = (long) INDEX.getAcquire(indexes, HEAD);
+            indexes[HEAD_CACHE] = head;
+            if(tail - head > mask)
+                return false;
+        }
+        buffer[(int) (tail & mask)] = element;
+        INDEX.setRelease(indexes, TAIL, tail + 1);
+        return true;
+    }
+
+    /**
+     * Remove the oldest element, only ever called by the consumer thread
+     *
+     * @return the element, null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long head = indexes[HEAD];
+        if(head >= indexes[TAIL_CACHE]) {
+            long tail = (long) INDEX.getAcquire(indexes, TAIL);
+            indexes[TAIL_CACHE] = tail;
+            if(head >= tail)
+                return null;
+        }
+        int slot = (int) (head & mask);
+        E element = (E) buffer[slot];
+        buffer[slot] = null;
+        INDEX.setRelease(indexes, HEAD, head + 1);
+        return element;
+    }
+
+    /**
+     * Get an estimate of the amount of queued elements, callable from any thread
+     *
+     * @return queued element count
+     */
+    public int size() {
+        long head = (long) INDEX.getAcquire(indexes, HEAD);
+        long tail = (long) INDEX.getAcquire(indexes, TAIL);
+        return (int) Math.max(0, tail - head);
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+}
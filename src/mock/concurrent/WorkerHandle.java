@@ -0,0 +1,74 @@
+package mock.concurrent;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lets another thread interrupt the worker running one specific task, and only that task
+ * The worker brackets the task with enter and exit, abort interrupts it only while it is inside.
+ * A worker that leaves while an abort is in progress waits for it and clears the interrupt,
+ * so a pooled thread never carries a stale interrupt into its next task.
+ */
+public class WorkerHandle {
+    private static final Object ABORTED = new Object();
+    private static final Object INTERRUPTING = new Object();
+    private static final Object DONE = new Object();
+
+    // null before the task starts, then the running thread, then one of the markers
+    private final AtomicReference<Object> state = new AtomicReference<>();
+
+    /**
+     * Mark the current thread as running the task
+     *
+     * @return True if the task may run, false if it was aborted before it started
+     */
+    public boolean enter() {
+        return state.compareAndSet(null, Thread.currentThread());
+    }
+
+    /**
+     * Mark the task as finished, clearing any interrupt delivered by abort
+     */
+    public void exit() {
+        Thread current = Thread.currentThread();
+        if(state.compareAndSet(current, DONE))
+            return;
+
+        while(state.get() == INTERRUPTING) {
+            Thread.onSpinWait();
+        }
+        Thread.interrupted();
+    }
+
+    /**
+     * Abort the task, interrupting its worker if it is running
+     *
+     * @return True if the task was aborted before finishing, false if it had already finished
+     */
+    public boolean abort() {
+        while(true) {
+            Object current = state.get();
+            if(current == null) {
+                if(state.compareAndSet(null, ABORTED))
+                    return true;
+            } else if(current instanceof Thread) {
+                if(state.compareAndSet(current, INTERRUPTING)) {
+                    ((Thread) current).interrupt();
+                    state.set(ABORTED);
+                    return true;
+                }
+            } else {
+                return current == ABORTED || current == INTERRUPTING;
+            }
+        }
+    }
+
+    /**
+     * Determines if the task has been aborted
+     *
+     * @return True if aborted, false otherwise
+     */
+    public boolean isAborted() {
+        Object current = state.get();
+        return current == ABORTED || current == INTERRUPTING;
+    }
+}
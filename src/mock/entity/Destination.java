@@ -1,15 +1,70 @@
 package mock.entity;
 
+/**
+ * A location payloads are moved between
+ * Destinations interned by a DestinationRegistry carry a dense id, so they can be used as array
+ * indexes without hashing their name. Destinations are equal when their names are, ids only speed up
+ * comparisons between destinations of the same registry, where a name always maps to the same id.
+ */
 public class Destination {
-    private String name;
+    public static final int UNREGISTERED = -1;
+
+    private final String name;
+    private final int id;
+    private final DestinationRegistry registry;
 
     public Destination(String name) {
+        this(name, UNREGISTERED, null);
+    }
+
+    Destination(String name, int id, DestinationRegistry registry) {
         this.name = name;
+        this.id = id;
+        this.registry = registry;
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * Get the dense id given by the registry that interned this destination
+     *
+     * @return the id, or UNREGISTERED if the destination was not interned
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Determines if this is the same location as the other destination
+     * Destinations of the same registry are compared by id, others by name
+     *
+     * @param other - Destination to compare with
+     * @return True if both are the same location, false otherwise
+     */
+    public boolean isSameLocation(Destination other) {
+        if(other == this)
+            return true;
+        if(other == null)
+            return false;
+        if(registry != null && registry == other.registry)
+            return id == other.id;
+        return name.equals(other.name);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Destination && isSameLocation((Destination) other);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
 
+    @Override
+    public String toString() {
+        return name;
+    }
 }
@@ -0,0 +1,82 @@
+package mock.entity;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns destinations by name and gives each one a dense int id from 0 to capacity - 1
+ * Per destination state can then be kept in primitive arrays indexed by id instead of maps.
+ */
+public class DestinationRegistry {
+    public static final int DEFAULT_CAPACITY = 65_536;
+
+    private final ConcurrentHashMap<String, Destination> byName;
+    private final AtomicReferenceArray<Destination> byId;
+    private final AtomicInteger nextId;
+
+    public DestinationRegistry() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - Maximum amount of destinations the registry can hold
+     */
+    public DestinationRegistry(int capacity) {
+        this.byName = new ConcurrentHashMap<>();
+        this.byId = new AtomicReferenceArray<>(capacity);
+        this.nextId = new AtomicInteger();
+    }
+
+    /**
+     * Get the destination with the given name, registering it if it is new
+     * Thread-safe, every caller receives the same instance for a name
+     *
+     * @param name - Name of the destination
+     * @return the interned destination
+     */
+    public Destination intern(String name) {
+        Destination destination = byName.get(name);
+        if(destination != null)
+            return destination;
+
+        return byName.computeIfAbsent(name, key -> {
+            int id = nextId.getAndIncrement();
+            if(id >= byId.length()) {
+                nextId.decrementAndGet();
+                throw new IllegalStateException("Destination registry is full at " + byId.length() + " destinations");
+            }
+            Destination interned = new Destination(key, id, this);
+            byId.set(id, interned);
+            return interned;
+        });
+    }
+
+    /**
+     * Get a destination by its id
+     *
+     * @param id - Id given by intern
+     * @return the destination, or null if no destination has that id
+     */
+    public Destination get(int id) {
+        return id >= 0 && id < byId.length() ? byId.get(id) : null;
+    }
+
+    /**
+     * Get the amount of registered destinations
+     *
+     * @return registered destination count
+     */
+    public int size() {
+        return Math.min(nextId.get(), byId.length());
+    }
+
+    /**
+     * Get the maximum amount of destinations, which bounds every id
+     *
+     * @return registry capacity
+     */
+    public int capacity() {
+        return byId.length();
+    }
+}
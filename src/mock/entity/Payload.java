@@ -2,21 +2,43 @@ package mock.entity;
 
 import org.junit.runner.notification.RunListener.ThreadSafe;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * A thread-safe mock payload class that must be delivered to a destination
+ * The current location is published through a VarHandle so readers and writers never take the monitor
  *
  * @param <T>
  */
 @ThreadSafe
 public class Payload<T> {
+    private static final VarHandle CURRENT_LOCATION;
+    private static final VarHandle BUNDLE;
+
+    static {
+        try {
+            CURRENT_LOCATION = MethodHandles.lookup().findVarHandle(Payload.class, "currentLocation", Destination.class);
+            BUNDLE = MethodHandles.lookup().findVarHandle(Payload.class, "bundle", ConcurrentLinkedQueue.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Deadline of a payload that may be delivered at any time
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
     private Destination destination;
     private Destination origin;
-    private Destination currentLocation;
+    private volatile Destination currentLocation;
     private T contents;
     private String name;
-    private final ConcurrentLinkedQueue<Payload> bundle;
+    // Only created once something is bundled, most payloads never carry one
+    private volatile ConcurrentLinkedQueue<Payload> bundle;
+    private volatile long deadline = NO_DEADLINE;
 
     /**
      * Mock payload implementation
@@ -28,7 +50,6 @@ public class Payload<T> {
     public Payload(String name, T contents) {
         this.name = name;
         this.contents = contents;
-        this.bundle = new ConcurrentLinkedQueue<>();
     }
 
     /**
@@ -45,7 +66,6 @@ public class Payload<T> {
         this.contents = contents;
         this.destination = destination;
         this.origin = origin;
-        this.bundle = new ConcurrentLinkedQueue<>();
     }
 
     /**
@@ -66,20 +86,38 @@ public class Payload<T> {
      *
      * @return True if arrived at destination, false otherwise
      */
-    public synchronized boolean isDelivered() {
-        return currentLocation == destination;
+    public boolean isDelivered() {
+        Destination current = (Destination) CURRENT_LOCATION.getAcquire(this);
+        return current == destination || current != null && current.isSameLocation(destination);
+    }
+
+    /**
+     * Thread-safe
+     * @param newLocation - Location the payload has been moved to
+     */
+    public void setCurrentLocation(Destination newLocation) {
+        CURRENT_LOCATION.setRelease(this, newLocation);
     }
 
     /**
      * Thread-safe
-     * @param newLocation
+     * Move the payload only if it is still at the expected location, so concurrent stages
+     * cannot both claim the same hop
+     *
+     * @param expectedLocation - Location the payload must currently be at
+     * @param newLocation - Location the payload is moved to
+     * @return True if the payload was moved, false if it was elsewhere
      */
-    public synchronized void setCurrentLocation(Destination newLocation) {
-        currentLocation = newLocation;
+    public boolean compareAndSetLocation(Destination expectedLocation, Destination newLocation) {
+        return CURRENT_LOCATION.compareAndSet(this, expectedLocation, newLocation);
     }
 
+    /**
+     * Thread-safe
+     * @return the location the payload was last moved to
+     */
     public Destination getCurrentLocation() {
-        return currentLocation;
+        return (Destination) CURRENT_LOCATION.getAcquire(this);
     }
 
     /**
@@ -100,12 +138,43 @@ public class Payload<T> {
         return destination;
     }
 
+    /**
+     * Get the time by which this payload must be delivered
+     *
+     * @return System.nanoTime() based deadline, or NO_DEADLINE
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Thread-safe
+     * @param deadline - System.nanoTime() based deadline, or NO_DEADLINE
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public boolean hasDeadline() {
+        return deadline != NO_DEADLINE;
+    }
+
     /**
      * A way of bundling payloads together into
      * @param newBundleObject - new payload to add to the current payload
      */
-    public synchronized void addBundle(Payload newBundleObject) {
-        bundle.add(newBundleObject);
+    public void addBundle(Payload newBundleObject) {
+        getBundle().add(newBundleObject);
+    }
+
+    /**
+     * Determines if anything has been bundled with this payload, without creating the bundle
+     *
+     * @return True if the payload carries a non empty bundle, false otherwise
+     */
+    public boolean hasBundle() {
+        ConcurrentLinkedQueue<Payload> current = bundle;
+        return current != null && !current.isEmpty();
     }
 
     /**
@@ -113,7 +182,12 @@ public class Payload<T> {
      *
      * @return all the bundled objects with this payload
      */
-    public synchronized ConcurrentLinkedQueue<Payload> getBundle() {
-        return bundle;
+    public ConcurrentLinkedQueue<Payload> getBundle() {
+        ConcurrentLinkedQueue<Payload> current = bundle;
+        if(current != null)
+            return current;
+        ConcurrentLinkedQueue<Payload> created = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Payload> witness = (ConcurrentLinkedQueue<Payload>) BUNDLE.compareAndExchange(this, null, created);
+        return witness == null ? created : witness;
     }
 }
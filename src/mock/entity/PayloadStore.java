@@ -0,0 +1,351 @@
+package mock.entity;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A compact store for very large amounts of payloads, kept off-heap in fixed size records
+ * Each record holds the name id, origin, destination and current location ids, status flags and deadline
+ * of one payload, so millions of payloads cost a single direct buffer instead of millions of objects
+ * for the garbage collector to trace.
+ *
+ * Views are flyweight Payloads reading and writing a record, they can be handed to Transport like any payload.
+ * A view can be moved to another record and reused, but a view in use by two deliveries at once
+ * must not be moved.
+ * Records are published in index order: every add claims an index, writes its record and only then
+ * raises the committed count with a release store, so a reader bounded by that count never sees a
+ * half written record.
+ */
+public class PayloadStore {
+    // Record layout, in bytes
+    private static final int NAME_ID = 0;
+    private static final int ORIGIN = 4;
+    private static final int DESTINATION = 8;
+    private static final int CURRENT_LOCATION = 12;
+    private static final int FLAGS = 16;
+    private static final int DEADLINE = 24;
+    private static final int RECORD_BYTES = 32;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Status flag of a delivered payload
+     */
+    public static final int DELIVERED = 1;
+    /**
+     * Status flag of a payload whose delivery failed
+     */
+    public static final int FAILED = 1 << 1;
+    /**
+     * Status flag of a payload that missed its deadline
+     */
+    public static final int MISSED = 1 << 2;
+
+    private final ByteBuffer records;
+    private final DestinationRegistry registry;
+    private final String namePrefix;
+    private final int capacity;
+    private final AtomicInteger claimed;
+    private final AtomicInteger committed;
+
+    /**
+     * @param capacity - Maximum amount of payloads in the store
+     * @param registry - Registry resolving the stored destination ids
+     * @param namePrefix - Prefix of every payload's name, followed by its name id
+     */
+    public PayloadStore(int capacity, DestinationRegistry registry, String namePrefix) {
+        if(capacity < 0 || capacity > Integer.MAX_VALUE / RECORD_BYTES)
+            throw new IllegalArgumentException("Capacity must be between 0 and " + Integer.MAX_VALUE / RECORD_BYTES);
+
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+        this.registry = registry;
+        this.namePrefix = namePrefix;
+        this.capacity = capacity;
+        this.claimed = new AtomicInteger();
+        this.committed = new AtomicInteger();
+    }
+
+    /**
+     * Add a payload to the store
+     * Thread-safe
+     *
+     * @param nameId - Id appended to the name prefix to form the payload's name
+     * @param origin - Start position, interned by the store's registry
+     * @param destination - Final position, interned by the store's registry
+     * @return index of the payload's record
+     * @throws IllegalStateException if the store is full
+     */
+    public int add(int nameId, Destination origin, Destination destination) {
+        int originId = idOf(origin);
+        int destinationId = idOf(destination);
+        int index = claimed.getAndIncrement();
+        if(index >= capacity) {
+            claimed.decrementAndGet();
+            throw new IllegalStateException("Payload store is full at " + capacity + " payloads");
+        }
+
+        int offset = index * RECORD_BYTES;
+        INT.set(records, offset + NAME_ID, nameId);
+        INT.set(records, offset + ORIGIN, originId);
+        INT.set(records, offset + DESTINATION, destinationId);
+        INT.set(records, offset + CURRENT_LOCATION, Destination.UNREGISTERED);
+        INT.set(records, offset + FLAGS, 0);
+        LONG.set(records, offset + DEADLINE, Payload.NO_DEADLINE);
+        // Earlier indexes are published first, their adders are only a few stores behind
+        while(committed.get() != index) {
+            Thread.yield();
+        }
+        committed.setRelease(index + 1);
+        return index;
+    }
+
+    /**
+     * Get the amount of payloads in the store
+     *
+     * @return amount of committed payloads, every record below it is fully written
+     */
+    public int size() {
+        return committed.getAcquire();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the off-heap memory taken by the records
+     *
+     * @return size of the record buffer in bytes
+     */
+    public long getOffHeapBytes() {
+        return (long) capacity * RECORD_BYTES;
+    }
+
+    /**
+     * Create a view of a payload's record
+     *
+     * @param index - Index of the record
+     * @return a payload reading and writing the record
+     */
+    public View view(int index) {
+        return new View().moveTo(index);
+    }
+
+    /**
+     * Push every payload to the consumer through a single view moved from record to record
+     * The consumer must be done with the view when it returns, e.g. when scanning or counting payloads
+     *
+     * @param consumer - Receives the view, positioned on each payload in turn
+     */
+    public void forEach(Consumer<Payload> consumer) {
+        int count = size();
+        if(count == 0)
+            return;
+        View view = new View();
+        for(int i = 0; i < count; i++) {
+            consumer.accept(view.moveTo(i));
+        }
+    }
+
+    /**
+     * Push a new view of every payload to the consumer, so the store can be used as a PayloadSource
+     * Each view stays on its record, the consumer may keep it while the delivery runs
+     *
+     * @param consumer - Receives a view of each payload
+     */
+    public void forEachRetained(Consumer<Payload> consumer) {
+        int count = size();
+        for(int i = 0; i < count; i++) {
+            consumer.accept(view(i));
+        }
+    }
+
+    public int getNameId(int index) {
+        return (int) INT.get(records, offset(index) + NAME_ID);
+    }
+
+    public int getOriginId(int index) {
+        return (int) INT.get(records, offset(index) + ORIGIN);
+    }
+
+    public int getDestinationId(int index) {
+        return (int) INT.get(records, offset(index) + DESTINATION);
+    }
+
+    /**
+     * Thread-safe
+     * @param index - Index of the record
+     * @return id of the location the payload was last moved to, Destination.UNREGISTERED if never moved
+     */
+    public int getCurrentLocationId(int index) {
+        return (int) INT.getAcquire(records, offset(index) + CURRENT_LOCATION);
+    }
+
+    /**
+     * Thread-safe
+     * @param index - Index of the record
+     * @param locationId - Id of the location the payload has been moved to
+     */
+    public void setCurrentLocationId(int index, int locationId) {
+        INT.setRelease(records, offset(index) + CURRENT_LOCATION, locationId);
+    }
+
+    /**
+     * Thread-safe
+     * @param index - Index of the record
+     * @param expectedId - Id of the location the payload must currently be at
+     * @param locationId - Id of the location the payload is moved to
+     * @return True if the payload was moved, false if it was elsewhere
+     */
+    public boolean compareAndSetLocationId(int index, int expectedId, int locationId) {
+        return INT.compareAndSet(records, offset(index) + CURRENT_LOCATION, expectedId, locationId);
+    }
+
+    public boolean isDelivered(int index) {
+        return getCurrentLocationId(index) == getDestinationId(index);
+    }
+
+    /**
+     * Thread-safe
+     * @param index - Index of the record
+     * @return the status flags of the payload
+     */
+    public int getFlags(int index) {
+        return (int) INT.getAcquire(records, offset(index) + FLAGS);
+    }
+
+    /**
+     * Raise status flags, leaving the other flags as they are
+     * Thread-safe
+     *
+     * @param index - Index of the record
+     * @param flags - Flags to raise, e.g. DELIVERED
+     */
+    public void setFlags(int index, int flags) {
+        int offset = offset(index) + FLAGS;
+        int current;
+        do {
+            current = (int) INT.getVolatile(records, offset);
+        } while(!INT.compareAndSet(records, offset, current, current | flags));
+    }
+
+    public long getDeadline(int index) {
+        return (long) LONG.getAcquire(records, offset(index) + DEADLINE);
+    }
+
+    public void setDeadline(int index, long deadline) {
+        LONG.setRelease(records, offset(index) + DEADLINE, deadline);
+    }
+
+    private int offset(int index) {
+        if(index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("No payload at " + index);
+        return index * RECORD_BYTES;
+    }
+
+    private int idOf(Destination destination) {
+        if(destination == null || destination.getId() == Destination.UNREGISTERED || registry.get(destination.getId()) != destination)
+            throw new IllegalArgumentException("Destination " + destination + " is not interned by this store's registry");
+        return destination.getId();
+    }
+
+    /**
+     * A flyweight payload backed by a record of the store
+     * Only the record's index lives on the heap, bundles are not supported
+     */
+    public class View extends Payload<Integer> {
+        private int index;
+
+        private View() {
+            super(null, null);
+        }
+
+        /**
+         * Point this view at another record
+         *
+         * @param index - Index of the record
+         * @return this view
+         */
+        public View moveTo(int index) {
+            offset(index);
+            this.index = index;
+            return this;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Build the payload's name, only call it when the name is really needed, e.g. to log it
+         *
+         * @return name of the payload
+         */
+        @Override
+        public String getName() {
+            return namePrefix + getNameId(index);
+        }
+
+        @Override
+        public Integer getContents() {
+            return getNameId(index);
+        }
+
+        @Override
+        public boolean isDelivered() {
+            return PayloadStore.this.isDelivered(index);
+        }
+
+        @Override
+        public void setCurrentLocation(Destination newLocation) {
+            setCurrentLocationId(index, idOf(newLocation));
+        }
+
+        @Override
+        public boolean compareAndSetLocation(Destination expectedLocation, Destination newLocation) {
+            int expectedId = expectedLocation == null ? Destination.UNREGISTERED : idOf(expectedLocation);
+            return compareAndSetLocationId(index, expectedId, idOf(newLocation));
+        }
+
+        @Override
+        public Destination getCurrentLocation() {
+            int id = getCurrentLocationId(index);
+            return id == Destination.UNREGISTERED ? null : registry.get(id);
+        }
+
+        @Override
+        public Destination getOrigin() {
+            return registry.get(getOriginId(index));
+        }
+
+        @Override
+        public Destination getDestination() {
+            return registry.get(getDestinationId(index));
+        }
+
+        @Override
+        public long getDeadline() {
+            return PayloadStore.this.getDeadline(index);
+        }
+
+        @Override
+        public void setDeadline(long deadline) {
+            PayloadStore.this.setDeadline(index, deadline);
+        }
+
+        @Override
+        public boolean hasDeadline() {
+            return getDeadline() != NO_DEADLINE;
+        }
+
+        @Override
+        public void addBundle(Payload newBundleObject) {
+            throw new UnsupportedOperationException("Stored payloads cannot carry a bundle");
+        }
+    }
+}
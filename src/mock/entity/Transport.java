@@ -1,12 +1,59 @@
 package mock.entity;
 
+import mock.concurrent.InterruptibleFuture;
+import mock.log.ConsoleTransportLog;
+import mock.log.TransportLog;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 public class Transport {
-    private int iterations;
-    private boolean shouldLog;
+    // Iterations between two checks of the interrupt flag, must be a power of two
+    private static final int INTERRUPT_CHECK_INTERVAL = 1_024;
+
+    private final int iterations;
+    private final boolean shouldLog;
+    private final TransportLog log;
+    private final long pauseNanos;
 
     public Transport(boolean shouldLog, int iterations) {
-        this.shouldLog = shouldLog;
+        this(iterations, shouldLog ? ConsoleTransportLog.STDOUT : TransportLog.NONE);
+    }
+
+    /**
+     * Create a transport that reports its movements to the given log
+     *
+     * @param iterations amount of iterations it takes to transport a payload
+     * @param log log receiving the movements, TransportLog.NONE to disable logging
+     */
+    public Transport(int iterations, TransportLog log) {
+        this(iterations, log, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Create a transport that also blocks for a while on every delivery, like a call to a remote depot
+     *
+     * @param iterations amount of iterations it takes to transport a payload
+     * @param log log receiving the movements, TransportLog.NONE to disable logging
+     * @param pause time the transport blocks its thread on every delivery
+     * @param unit unit of the pause
+     */
+    public Transport(int iterations, TransportLog log, long pause, TimeUnit unit) {
         this.iterations = iterations;
+        this.log = log;
+        this.shouldLog = log != TransportLog.NONE;
+        this.pauseNanos = unit.toNanos(pause);
+    }
+
+    /**
+     * Determines if deliveries block their thread and belong on a blocking friendly executor
+     *
+     * @return True if every delivery blocks, false if deliveries are purely CPU bound
+     */
+    public boolean isBlocking() {
+        return pauseNanos > 0;
     }
 
     /**
@@ -20,6 +67,31 @@ public class Transport {
         return payload;
     }
 
+    /**
+     * Deliver the payload on the executor
+     * Cancelling the returned future with cancel(true) interrupts the transport and frees the worker
+     *
+     * @param payload payload to be delivered
+     * @param executor executor the delivery runs on
+     * @return a future completed with the payload once delivered
+     */
+    public InterruptibleFuture<Payload> deliverAsync(Payload payload, Executor executor) {
+        return InterruptibleFuture.supplyAsync(() -> deliveryPayload(payload), executor);
+    }
+
+    /**
+     * Deliver every payload of a batch one after the other on the calling thread
+     *
+     * @param payloads payloads to be delivered
+     * @return the payloads that have been acted upon
+     */
+    public List<Payload> deliverBatch(List<Payload> payloads) {
+        for(int i = 0; i < payloads.size(); i++) {
+            transportPayload(payloads.get(i));
+        }
+        return payloads;
+    }
+
     /**
      * Deliver the payload by transporting it then returning it
      * but encounter a mock issue and throw an exception
@@ -33,16 +105,33 @@ public class Transport {
 
     /**
      * Transport the payload by moving it over iterations
+     * Nothing is formatted or allocated unless logging is enabled
+     * Blocking transports then pause for their configured time
+     * The transport stops early if its thread is interrupted
      *
      * @param payload payload to be moved
+     * @throws CancellationException if the thread was interrupted during the transport
      */
     public void transportPayload(Payload payload) {
         for(int i = 0; i < iterations; i++) {
+            if((i & (INTERRUPT_CHECK_INTERVAL - 1)) == 0 && Thread.currentThread().isInterrupted())
+                throw new CancellationException("Transport of " + payload.getName() + " interrupted");
             if(shouldLog)
-                System.out.println(String.format("Payload: %s has moved to its %2d position", payload.getName(), i + 1));
+                log.moved(payload, i + 1);
         }
+        if(pauseNanos > 0)
+            pause(payload);
+        if(shouldLog)
+            log.finished(payload);
+    }
 
-        System.out.println(String.format("Payload: %s has finished!", payload.getName()));
+    private void pause(Payload payload) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(pauseNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Transport of " + payload.getName() + " interrupted");
+        }
     }
 
     /**
@@ -56,10 +145,18 @@ public class Transport {
        throw new Exception("Transport Failure");
     }
 
+    /**
+     * Hang for a very long time before returning the payload
+     * An interrupt ends the wait early and is kept on the thread so callers can still see it
+     *
+     * @param payload payload to be returned
+     * @return the payload
+     */
     public Payload sleep(Payload payload) {
         try {
             Thread.sleep(1_000_000_000);
-        } catch (Exception e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             System.err.println(e.getMessage());
         }
         return payload;
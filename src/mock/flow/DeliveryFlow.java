@@ -0,0 +1,146 @@
+package mock.flow;
+
+import mock.entity.Payload;
+import mock.pipeline.PayloadSource;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bridges between payload sources, Flow publishers and CompletableFutures
+ */
+public final class DeliveryFlow {
+    private static final long OFFER_WAIT_MILLIS = 10;
+    // Thrown through the source once nobody listens anymore, the stack trace is never used
+    private static final CancellationException STOPPED = new CancellationException("Subscriber cancelled");
+
+    private DeliveryFlow() {
+    }
+
+    /**
+     * Publish the payloads of a source, for a single subscriber
+     * The source runs on the executor and waits whenever the subscriber has bufferSize payloads
+     * it has not asked for yet, so a slow pipeline slows the source down instead of filling the heap.
+     * It stops reading as soon as the subscriber cancels.
+     * The waiting source holds one of the executor's threads, so the executor must be able to deliver
+     * to the subscriber while the source runs: a ForkJoinPool, which compensates for the blocked thread,
+     * or a pool with at least two threads. A single threaded executor deadlocks once the buffer is full.
+     *
+     * @param source - Source of the payloads
+     * @param executor - Executor the source and the deliveries to the subscriber run on
+     * @param bufferSize - Maximum amount of payloads published ahead of the subscriber's demand
+     * @return a publisher of the source's payloads
+     */
+    public static Flow.Publisher<Payload> publish(PayloadSource source, Executor executor, int bufferSize) {
+        return subscriber -> {
+            SubmissionPublisher<Payload> publisher = new SubmissionPublisher<>(executor, bufferSize);
+            publisher.subscribe(subscriber);
+            executor.execute(() -> {
+                try {
+                    source.forEach(payload -> {
+                        // A full buffer is waited on in slices, so a cancelled subscriber is noticed
+                        while(publisher.offer(payload, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS, null) < 0) {
+                            if(publisher.isClosed() || !publisher.hasSubscribers())
+                                throw STOPPED;
+                        }
+                        if(publisher.isClosed() || !publisher.hasSubscribers())
+                            throw STOPPED;
+                    });
+                    publisher.close();
+                } catch (IOException | RuntimeException e) {
+                    if(e == STOPPED)
+                        publisher.close();
+                    else
+                        publisher.closeExceptionally(e);
+                }
+            });
+        };
+    }
+
+    /**
+     * Get the first item of a publisher as a future, cancelling the rest of the stream
+     *
+     * @param publisher - Publisher of the item
+     * @return a future completed with the first item, or with a NoSuchElementException if there is none
+     */
+    public static <T> CompletableFuture<T> first(Flow.Publisher<T> publisher) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<T>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                // Cancelling the future cancels the stream
+                future.whenComplete((result, throwable) -> subscription.cancel());
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(T item) {
+                future.complete(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.completeExceptionally(new NoSuchElementException("Publisher completed without an item"));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Consume a publisher, requesting batchSize items at a time
+     *
+     * @param publisher - Publisher to consume
+     * @param batchSize - Amount of items requested at once
+     * @return a future completed with the amount of items once the publisher has completed
+     */
+    public static CompletableFuture<Long> count(Flow.Publisher<?> publisher, int batchSize) {
+        if(batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive");
+
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<Object>() {
+            private Flow.Subscription subscription;
+            private long count;
+            private int remaining;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                future.whenComplete((result, throwable) -> subscription.cancel());
+                remaining = batchSize;
+                subscription.request(batchSize);
+            }
+
+            @Override
+            public void onNext(Object item) {
+                count++;
+                if(--remaining == 0) {
+                    remaining = batchSize;
+                    subscription.request(batchSize);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(count);
+            }
+        });
+        return future;
+    }
+}
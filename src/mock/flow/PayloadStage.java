@@ -0,0 +1,130 @@
+package mock.flow;
+
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A synchronous step of a payload stream, emitting zero or more payloads for every payload it accepts
+ * Adjacent stages are fused with andThen into a single stage, so they run in one call on one thread
+ * instead of each hopping through its own queue and executor task.
+ * A stage is only ever called by one thread at a time and may keep state.
+ */
+public interface PayloadStage {
+
+    /**
+     * Process a payload
+     *
+     * @param payload - Payload from upstream
+     * @param downstream - Receives the payloads this stage emits
+     */
+    void accept(Payload payload, Consumer<Payload> downstream);
+
+    /**
+     * Emit whatever the stage still holds once upstream has completed
+     *
+     * @param downstream - Receives the payloads this stage emits
+     */
+    default void finish(Consumer<Payload> downstream) {
+    }
+
+    /**
+     * Fuse this stage with the next one
+     *
+     * @param next - Stage receiving this stage's payloads
+     * @return a stage running both
+     */
+    default PayloadStage andThen(PayloadStage next) {
+        PayloadStage first = this;
+        return new PayloadStage() {
+            @Override
+            public void accept(Payload payload, Consumer<Payload> downstream) {
+                first.accept(payload, emitted -> next.accept(emitted, downstream));
+            }
+
+            @Override
+            public void finish(Consumer<Payload> downstream) {
+                first.finish(emitted -> next.accept(emitted, downstream));
+                next.finish(downstream);
+            }
+        };
+    }
+
+    /**
+     * Deliver every payload with the transport
+     *
+     * @param transport - Transport the payloads are delivered with
+     * @return the transport stage
+     */
+    static PayloadStage transport(Transport transport) {
+        return (payload, downstream) -> downstream.accept(transport.deliveryPayload(payload));
+    }
+
+    /**
+     * Bundle payloads going to the same destination, emitting a bundle once it holds bundleSize payloads
+     * Partial bundles are emitted when upstream completes
+     *
+     * @param bundleSize - Amount of payloads in a full bundle
+     * @return the bundling stage
+     */
+    static PayloadStage bundle(int bundleSize) {
+        if(bundleSize < 1)
+            throw new IllegalArgumentException("Bundle size must be positive");
+
+        return new PayloadStage() {
+            private final Map<Destination, Payload<Void>> open = new HashMap<>();
+            private final Map<Destination, Integer> sizes = new HashMap<>();
+            private long sequence;
+
+            @Override
+            public void accept(Payload payload, Consumer<Payload> downstream) {
+                Destination destination = payload.getDestination();
+                Payload<Void> bundle = open.get(destination);
+                if(bundle == null) {
+                    bundle = new Payload<>("Bundle-" + ++sequence, null, payload.getOrigin(), destination);
+                    open.put(destination, bundle);
+                }
+                bundle.addBundle(payload);
+                int size = sizes.merge(destination, 1, Integer::sum);
+                if(size == bundleSize) {
+                    open.remove(destination);
+                    sizes.remove(destination);
+                    downstream.accept(bundle);
+                }
+            }
+
+            @Override
+            public void finish(Consumer<Payload> downstream) {
+                for(Payload<Void> bundle : open.values()) {
+                    downstream.accept(bundle);
+                }
+                open.clear();
+                sizes.clear();
+            }
+        };
+    }
+
+    /**
+     * Confirm the delivery by moving the payload, and everything bundled with it, to its destination
+     *
+     * @return the confirmation stage
+     */
+    static PayloadStage confirm() {
+        return (payload, downstream) -> {
+            // A wildcard payload keeps the bundle's element type that the raw type erases
+            Payload<?> confirmed = payload;
+            Destination destination = confirmed.getDestination();
+            confirmed.setCurrentLocation(destination);
+            if(confirmed.hasBundle()) {
+                for(Payload child : confirmed.getBundle()) {
+                    child.setCurrentLocation(destination);
+                }
+            }
+            downstream.accept(payload);
+        };
+    }
+}
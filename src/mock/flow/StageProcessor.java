@@ -0,0 +1,258 @@
+package mock.flow;
+
+import mock.entity.Payload;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Flow processor running a fused chain of payload stages on an executor
+ *
+ * Upstream is asked for prefetch payloads up front and topped up every time three quarters of them
+ * have been processed, so at most prefetch payloads are ever buffered, whatever the upstream rate.
+ * Payloads are only processed while downstream has outstanding demand.
+ * All stages given through then() run in the same drain loop, one executor task serves many payloads
+ * instead of one task per payload and stage.
+ */
+public class StageProcessor implements Flow.Processor<Payload, Payload> {
+    private final Executor executor;
+    private final int prefetch;
+    private final int limit;
+    private final ConcurrentLinkedQueue<Payload> inbound;
+    // Payloads emitted by the stages but not yet requested, only touched by the drain loop
+    private final ArrayDeque<Payload> outbound;
+    // Drain loop guard, counts the signals that arrived while it was running
+    private final AtomicInteger wip;
+    private final AtomicLong requested;
+    private final AtomicBoolean subscribed;
+    private PayloadStage stage;
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super Payload> downstream;
+    private volatile boolean done;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    // Only touched by the drain loop
+    private boolean finished;
+    private int consumed;
+
+    /**
+     * @param stage - First stage of the processor
+     * @param executor - Executor the drain loop runs on
+     * @param prefetch - Maximum amount of payloads buffered from upstream
+     */
+    public StageProcessor(PayloadStage stage, Executor executor, int prefetch) {
+        if(prefetch < 1)
+            throw new IllegalArgumentException("Prefetch must be positive");
+
+        this.stage = stage;
+        this.executor = executor;
+        this.prefetch = prefetch;
+        this.limit = Math.max(1, prefetch - (prefetch >> 2));
+        this.inbound = new ConcurrentLinkedQueue<>();
+        this.outbound = new ArrayDeque<>();
+        this.wip = new AtomicInteger();
+        this.requested = new AtomicLong();
+        this.subscribed = new AtomicBoolean();
+    }
+
+    /**
+     * Fuse another synchronous stage onto this processor instead of adding an asynchronous boundary
+     *
+     * @param next - Stage receiving the payloads of the current last stage
+     * @return this processor
+     * @throws IllegalStateException if the processor is already subscribed
+     */
+    public StageProcessor then(PayloadStage next) {
+        if(upstream != null || downstream != null)
+            throw new IllegalStateException("Stages must be fused before subscribing");
+        stage = stage.andThen(next);
+        return this;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Payload> subscriber) {
+        if(!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("StageProcessor only supports a single subscriber"));
+            return;
+        }
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if(n <= 0) {
+                    fail(new IllegalArgumentException("Requested " + n + " payloads, must be positive"));
+                    return;
+                }
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while(!requested.compareAndSet(current, next));
+                schedule();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription subscription = upstream;
+                if(subscription != null)
+                    subscription.cancel();
+                schedule();
+            }
+        });
+        downstream = subscriber;
+        schedule();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if(upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        if(cancelled)
+            subscription.cancel();
+        else
+            subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(Payload payload) {
+        inbound.offer(payload);
+        schedule();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        done = true;
+        schedule();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        schedule();
+    }
+
+    private void fail(Throwable throwable) {
+        Flow.Subscription subscription = upstream;
+        if(subscription != null)
+            subscription.cancel();
+        onError(throwable);
+    }
+
+    private void schedule() {
+        if(wip.getAndIncrement() != 0)
+            return;
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            cancelled = true;
+            Flow.Subscriber<? super Payload> subscriber = downstream;
+            if(subscriber != null)
+                subscriber.onError(e);
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+        while(true) {
+            Flow.Subscriber<? super Payload> subscriber = downstream;
+            if(subscriber != null && emit(subscriber))
+                return;
+
+            missed = wip.addAndGet(-missed);
+            if(missed == 0)
+                return;
+        }
+    }
+
+    // Push payloads downstream while there is demand, returns true once the stream has terminated
+    private boolean emit(Flow.Subscriber<? super Payload> subscriber) {
+        long demand = requested.get();
+        long emitted = 0;
+        while(true) {
+            if(cancelled) {
+                inbound.clear();
+                outbound.clear();
+                return true;
+            }
+
+            if(outbound.isEmpty()) {
+                // Read before polling: a payload offered ahead of onComplete is then seen by the poll
+                boolean terminated = done;
+                Payload payload = inbound.poll();
+                if(payload != null) {
+                    try {
+                        stage.accept(payload, outbound::add);
+                    } catch (Throwable throwable) {
+                        return terminate(subscriber, throwable);
+                    }
+                    if(++consumed == limit) {
+                        consumed = 0;
+                        upstream.request(limit);
+                    }
+                    continue;
+                }
+                if(terminated && !finished) {
+                    finished = true;
+                    // A failed stream does not flush what the stages still hold
+                    if(error == null) {
+                        try {
+                            stage.finish(outbound::add);
+                        } catch (Throwable throwable) {
+                            return terminate(subscriber, throwable);
+                        }
+                        continue;
+                    }
+                }
+                if(terminated)
+                    return terminate(subscriber, error);
+                break;
+            }
+
+            if(emitted == demand)
+                break;
+            subscriber.onNext(outbound.poll());
+            emitted++;
+        }
+
+        if(emitted != 0 && demand != Long.MAX_VALUE)
+            requested.addAndGet(-emitted);
+        return false;
+    }
+
+    private boolean terminate(Flow.Subscriber<? super Payload> subscriber, Throwable throwable) {
+        cancelled = true;
+        inbound.clear();
+        outbound.clear();
+        if(throwable == null) {
+            subscriber.onComplete();
+        } else {
+            Flow.Subscription subscription = upstream;
+            if(subscription != null && !done)
+                subscription.cancel();
+            subscriber.onError(throwable);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+package mock.log;
+
+import mock.entity.Payload;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A log that hands events to a single drainer thread through a pre-allocated ring buffer
+ * Producers only store a reference and an int into their claimed slot, so logging never allocates
+ * or takes the stream's lock on a transport thread. The drainer formats events in batches and
+ * writes each batch with a single print call.
+ * When the ring is full, producers spin until the drainer frees a slot.
+ */
+public class AsyncTransportLog implements TransportLog, AutoCloseable {
+    private static final int FINISHED = -1;
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final PrintStream out;
+    private final int capacity;
+    private final int mask;
+    private final int batchSize;
+    private final String[] names;
+    private final int[] positions;
+    // Holds sequence + 1 for a slot once its event has been fully written
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private final Thread drainer;
+    private volatile long consumed;
+    private volatile boolean running;
+
+    public AsyncTransportLog(PrintStream out) {
+        this(out, 1 << 16, 1_024);
+    }
+
+    /**
+     * @param out - Stream the drainer writes to
+     * @param capacity - Amount of events the ring can hold, rounded up to a power of two
+     * @param batchSize - Maximum amount of events written per print call
+     */
+    public AsyncTransportLog(PrintStream out, int capacity, int batchSize) {
+        if(capacity < 1 || batchSize < 1)
+            throw new IllegalArgumentException("Capacity and batch size must be positive");
+
+        int size = 1;
+        while(size < capacity) {
+            size <<= 1;
+        }
+        this.out = out;
+        this.capacity = size;
+        this.mask = this.capacity - 1;
+        this.batchSize = batchSize;
+        this.names = new String[this.capacity];
+        this.positions = new int[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        this.claimed = new AtomicLong();
+        this.running = true;
+        this.drainer = new Thread(this::drain, "transport-log");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    @Override
+    public void moved(Payload payload, int position) {
+        publish(payload.getName(), position);
+    }
+
+    @Override
+    public void finished(Payload payload) {
+        publish(payload.getName(), FINISHED);
+    }
+
+    private void publish(String name, int position) {
+        long sequence = claimed.getAndIncrement();
+        while(sequence - consumed >= capacity) {
+            Thread.onSpinWait();
+        }
+        int slot = (int) (sequence & mask);
+        names[slot] = name;
+        positions[slot] = position;
+        published.lazySet(slot, sequence + 1);
+    }
+
+    private void drain() {
+        StringBuilder batch = new StringBuilder(batchSize * 48);
+        while(running || consumed < claimed.get()) {
+            long sequence = consumed;
+            int drained = 0;
+            while(drained < batchSize && published.get((int) (sequence & mask)) == sequence + 1) {
+                int slot = (int) (sequence & mask);
+                append(batch, names[slot], positions[slot]);
+                names[slot] = null;
+                sequence++;
+                drained++;
+            }
+
+            if(drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            consumed = sequence;
+            out.print(batch);
+            batch.setLength(0);
+        }
+        out.flush();
+    }
+
+    private static void append(StringBuilder batch, String name, int position) {
+        batch.append("Payload: ").append(name);
+        if(position == FINISHED) {
+            batch.append(" has finished!");
+        } else {
+            batch.append(" has moved to its ");
+            if(position < 10)
+                batch.append(' ');
+            batch.append(position).append(" position");
+        }
+        batch.append(System.lineSeparator());
+    }
+
+    /**
+     * Get the amount of events written out so far
+     *
+     * @return drained event count
+     */
+    public long getDrained() {
+        return consumed;
+    }
+
+    /**
+     * Stop the drainer once every claimed event has been written
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
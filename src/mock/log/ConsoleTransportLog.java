@@ -0,0 +1,29 @@
+package mock.log;
+
+import mock.entity.Payload;
+
+import java.io.PrintStream;
+
+/**
+ * Writes every event straight to a PrintStream on the calling thread
+ * Each event is formatted and printed under the stream's lock, so concurrent transports serialize on it
+ */
+public class ConsoleTransportLog implements TransportLog {
+    public static final ConsoleTransportLog STDOUT = new ConsoleTransportLog(System.out);
+
+    private final PrintStream out;
+
+    public ConsoleTransportLog(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void moved(Payload payload, int position) {
+        out.println(String.format("Payload: %s has moved to its %2d position", payload.getName(), position));
+    }
+
+    @Override
+    public void finished(Payload payload) {
+        out.println(String.format("Payload: %s has finished!", payload.getName()));
+    }
+}
@@ -0,0 +1,314 @@
+package mock.log;
+
+import mock.entity.Destination;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An append-only journal of delivery events, written to memory-mapped segment files
+ *
+ * Producers claim a slot of a pre-allocated ring and return at once, a single writer thread copies
+ * published events into the current segment and forces the segment once per batch, so a whole batch
+ * is committed with one sync and no delivery thread ever waits for the disk.
+ * Each event is a fixed 16 byte record: type, payload id, location id and a checksum. A segment that
+ * is full is forced and the next one is created; records after a crash are valid up to the first
+ * one whose checksum does not match.
+ */
+public class DeliveryJournal implements AutoCloseable {
+    /**
+     * A payload was handed to a truck, the location is its origin
+     */
+    public static final int DISPATCHED = 1;
+    /**
+     * A payload was moved, the location is its new location
+     */
+    public static final int MOVED = 2;
+    /**
+     * A payload was delivered, the location is its destination
+     */
+    public static final int DELIVERED = 3;
+
+    static final int RECORD_BYTES = 16;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int capacity;
+    private final int mask;
+    private final int batchSize;
+    private final int[] types;
+    private final int[] payloadIds;
+    private final int[] locationIds;
+    // Holds sequence + 1 for a slot once its event has been fully written
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private final Thread writer;
+    private volatile long committed;
+    private volatile boolean running;
+    private volatile IOException failure;
+    // Only touched by the writer thread
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+
+    /**
+     * Receives the events of a journal during replay
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * @param type - DISPATCHED, MOVED or DELIVERED
+         * @param payloadId - Id of the payload
+         * @param locationId - Destination id of the location, Destination.UNREGISTERED if it had none
+         */
+        void event(int type, int payloadId, int locationId);
+    }
+
+    public DeliveryJournal(Path directory) throws IOException {
+        this(directory, 64 << 20, 1 << 16, 4_096);
+    }
+
+    /**
+     * Open the journal in the directory, appending after the last valid record of its last segment
+     *
+     * @param directory - Directory holding the segment files, created if missing
+     * @param segmentBytes - Size of each segment file, rounded down to whole records
+     * @param capacity - Amount of events the ring can hold, rounded up to a power of two
+     * @param batchSize - Maximum amount of events committed by a single force
+     * @throws IOException if the segments could not be opened
+     */
+    public DeliveryJournal(Path directory, int segmentBytes, int capacity, int batchSize) throws IOException {
+        if(segmentBytes < RECORD_BYTES || capacity < 1 || batchSize < 1)
+            throw new IllegalArgumentException("Segment must hold a record, capacity and batch size must be positive");
+
+        int size = 1;
+        while(size < capacity) {
+            size <<= 1;
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_BYTES;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.batchSize = batchSize;
+        this.types = new int[size];
+        this.payloadIds = new int[size];
+        this.locationIds = new int[size];
+        this.published = new AtomicLongArray(size);
+        this.claimed = new AtomicLong();
+
+        Files.createDirectories(directory);
+        List<Path> segments = segments(directory);
+        this.segmentIndex = segments.isEmpty() ? 0 : indexOf(segments.get(segments.size() - 1));
+        this.segment = map(segmentIndex);
+        this.segment.position(validBytes(segment));
+
+        this.running = true;
+        this.writer = new Thread(this::write, "delivery-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Replay every valid event of the journal in the directory, in the order they were appended
+     *
+     * @param directory - Directory holding the segment files
+     * @param visitor - Receives each event
+     * @return amount of events replayed
+     * @throws IOException if a segment could not be read
+     */
+    public static long replay(Path directory, Visitor visitor) throws IOException {
+        if(!Files.isDirectory(directory))
+            return 0;
+
+        long events = 0;
+        for(Path path : segments(directory)) {
+            MappedByteBuffer records;
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            records.order(ByteOrder.LITTLE_ENDIAN);
+            int limit = records.limit() - RECORD_BYTES;
+            for(int offset = 0; offset <= limit; offset += RECORD_BYTES) {
+                int type = records.getInt(offset);
+                int payloadId = records.getInt(offset + 4);
+                int locationId = records.getInt(offset + 8);
+                if(type == 0 || records.getInt(offset + 12) != checksum(type, payloadId, locationId))
+                    break;
+                visitor.event(type, payloadId, locationId);
+                events++;
+            }
+        }
+        return events;
+    }
+
+    public long dispatched(int payloadId, Destination origin) {
+        return append(DISPATCHED, payloadId, idOf(origin));
+    }
+
+    public long moved(int payloadId, Destination location) {
+        return append(MOVED, payloadId, idOf(location));
+    }
+
+    public long delivered(int payloadId, Destination destination) {
+        return append(DELIVERED, payloadId, idOf(destination));
+    }
+
+    /**
+     * Append an event without waiting for it to be written
+     * When the ring is full, the caller spins until the writer frees a slot
+     *
+     * @param type - DISPATCHED, MOVED or DELIVERED
+     * @param payloadId - Id of the payload
+     * @param locationId - Destination id of the location
+     * @return sequence of the event, durable once getCommitted() is greater
+     */
+    public long append(int type, int payloadId, int locationId) {
+        if(!running)
+            throw new IllegalStateException("Journal is closed");
+
+        long sequence = claimed.getAndIncrement();
+        // A claimed sequence must be published, the writer keeps draining up to it even while closing.
+        // Only a writer that is gone can leave it unpublished
+        while(sequence - committed >= capacity) {
+            if(failure != null || !writer.isAlive())
+                throw new IllegalStateException("Journal writer stopped", failure);
+            Thread.onSpinWait();
+        }
+        int slot = (int) (sequence & mask);
+        types[slot] = type;
+        payloadIds[slot] = payloadId;
+        locationIds[slot] = locationId;
+        published.lazySet(slot, sequence + 1);
+        return sequence;
+    }
+
+    /**
+     * Get the amount of events forced to disk so far
+     *
+     * @return committed event count
+     */
+    public long getCommitted() {
+        return committed;
+    }
+
+    private void write() {
+        try {
+            while(running || committed < claimed.get()) {
+                long sequence = committed;
+                int drained = 0;
+                while(drained < batchSize && published.get((int) (sequence & mask)) == sequence + 1) {
+                    int slot = (int) (sequence & mask);
+                    if(!segment.hasRemaining())
+                        rotate();
+                    int type = types[slot];
+                    int payloadId = payloadIds[slot];
+                    int locationId = locationIds[slot];
+                    segment.putInt(type).putInt(payloadId).putInt(locationId).putInt(checksum(type, payloadId, locationId));
+                    sequence++;
+                    drained++;
+                }
+
+                if(drained == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                // Group commit, one force for the whole batch
+                segment.force();
+                committed = sequence;
+            }
+        } catch (IOException | UncheckedIOException e) {
+            failure = e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e;
+            running = false;
+        }
+    }
+
+    private void rotate() throws IOException {
+        segment.force();
+        segmentIndex++;
+        segment = map(segmentIndex);
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return mapped;
+        }
+    }
+
+    // Offset just past the last valid record
+    private static int validBytes(MappedByteBuffer records) {
+        int limit = records.limit() - RECORD_BYTES;
+        int offset = 0;
+        while(offset <= limit) {
+            int type = records.getInt(offset);
+            if(type == 0 || records.getInt(offset + 12) != checksum(type, records.getInt(offset + 4), records.getInt(offset + 8)))
+                break;
+            offset += RECORD_BYTES;
+        }
+        return offset;
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for(Path path : stream) {
+                segments.add(path);
+            }
+        }
+        // Zero padded indexes sort by name
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static int indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int idOf(Destination destination) {
+        return destination == null ? Destination.UNREGISTERED : destination.getId();
+    }
+
+    private static int checksum(int type, int payloadId, int locationId) {
+        int hash = type * 0x9E3779B1;
+        hash = (hash ^ payloadId) * 0x85EBCA6B;
+        hash = (hash ^ locationId) * 0xC2B2AE35;
+        // Never zero, so a zeroed record can never pass
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Stop the writer once every appended event has been committed
+     *
+     * @throws IOException if the writer failed to write the journal
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(failure != null)
+            throw failure;
+    }
+}
@@ -0,0 +1,93 @@
+package mock.log;
+
+import mock.entity.Destination;
+
+import java.util.Arrays;
+
+/**
+ * The state of every payload rebuilt from a delivery journal
+ * Payload ids are dense, so the state is kept in two growing arrays instead of a map of objects.
+ */
+public class JournalReplay implements DeliveryJournal.Visitor {
+    private static final int UNKNOWN = 0;
+
+    // Type of the last event per payload id
+    private byte[] states;
+    // Location of the last event per payload id
+    private int[] locations;
+    private int inFlight;
+    private int delivered;
+    private long events;
+
+    public JournalReplay() {
+        this.states = new byte[1_024];
+        this.locations = new int[1_024];
+    }
+
+    @Override
+    public void event(int type, int payloadId, int locationId) {
+        if(payloadId < 0)
+            return;
+        if(payloadId >= states.length) {
+            int size = Math.max(states.length << 1, payloadId + 1);
+            states = Arrays.copyOf(states, size);
+            locations = Arrays.copyOf(locations, size);
+        }
+
+        int previous = states[payloadId];
+        if(previous == DeliveryJournal.DELIVERED) {
+            delivered--;
+        } else if(previous != UNKNOWN) {
+            inFlight--;
+        }
+        if(type == DeliveryJournal.DELIVERED) {
+            delivered++;
+        } else {
+            inFlight++;
+        }
+        states[payloadId] = (byte) type;
+        locations[payloadId] = locationId;
+        events++;
+    }
+
+    /**
+     * @param payloadId - Id of the payload
+     * @return true if the last event of the payload is its delivery
+     */
+    public boolean isDelivered(int payloadId) {
+        return payloadId >= 0 && payloadId < states.length && states[payloadId] == DeliveryJournal.DELIVERED;
+    }
+
+    /**
+     * @param payloadId - Id of the payload
+     * @return true if the payload was dispatched or moved but never delivered
+     */
+    public boolean isInFlight(int payloadId) {
+        return payloadId >= 0 && payloadId < states.length && states[payloadId] != UNKNOWN
+                && states[payloadId] != DeliveryJournal.DELIVERED;
+    }
+
+    /**
+     * Get the last known location of a payload
+     *
+     * @param payloadId - Id of the payload
+     * @return the destination id of the location, Destination.UNREGISTERED if the payload is unknown
+     */
+    public int getLocation(int payloadId) {
+        if(payloadId < 0 || payloadId >= states.length || states[payloadId] == UNKNOWN)
+            return Destination.UNREGISTERED;
+        return locations[payloadId];
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+}
@@ -0,0 +1,37 @@
+package mock.log;
+
+import mock.entity.Payload;
+
+/**
+ * Receives the movement events a Transport reports while it carries a payload
+ */
+public interface TransportLog {
+
+    /**
+     * A log that discards every event
+     */
+    TransportLog NONE = new TransportLog() {
+        @Override
+        public void moved(Payload payload, int position) {
+        }
+
+        @Override
+        public void finished(Payload payload) {
+        }
+    };
+
+    /**
+     * The payload has moved one step further
+     *
+     * @param payload payload being moved
+     * @param position 1-based position the payload has reached
+     */
+    void moved(Payload payload, int position);
+
+    /**
+     * The payload has finished its transport
+     *
+     * @param payload payload that was moved
+     */
+    void finished(Payload payload);
+}
@@ -0,0 +1,132 @@
+package mock.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent log-linear histogram of nanosecond latencies, in the spirit of HdrHistogram
+ * Each power of two is split into 16 linear buckets, so recorded values keep ~6% precision
+ * from 1ns up to Long.MAX_VALUE in a fixed 960 slot array.
+ * Counts are striped by thread so concurrent recorders rarely share a cache line.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+
+    public LatencyHistogram() {
+        int stripeCount = 1;
+        while(stripeCount < Runtime.getRuntime().availableProcessors()) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new AtomicLongArray[stripeCount];
+        for(int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Record a single latency
+     *
+     * @param nanos - Latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        // The identity hash of a thread never changes, so a thread keeps recording into the same stripe
+        int stripe = Thread.currentThread().hashCode() & stripeMask;
+        stripes[stripe].getAndIncrement(indexOf(Math.max(0, nanos)));
+    }
+
+    /**
+     * Sum every stripe into a point in time copy of the counts
+     *
+     * @return a snapshot of the counts
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for(AtomicLongArray stripe : stripes) {
+            for(int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    static int indexOf(long value) {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    // Highest value that falls into the bucket
+    static long valueOf(int index) {
+        if(index < SUB_BUCKETS)
+            return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long mantissa = index % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS | mantissa) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * A point in time copy of a histogram's counts
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        private Snapshot(long[] counts) {
+            long sum = 0;
+            for(long count : counts) {
+                sum += count;
+            }
+            this.counts = counts;
+            this.total = sum;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /**
+         * Get the latency at or below which the given fraction of values fall
+         *
+         * @param quantile - Fraction between 0 and 1, e.g. 0.99 for p99
+         * @return latency in nanoseconds, 0 if nothing was recorded
+         */
+        public long getValueAtQuantile(double quantile) {
+            if(total == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank)
+                    return valueOf(i);
+            }
+            return valueOf(counts.length - 1);
+        }
+
+        public long getMax() {
+            for(int i = counts.length - 1; i >= 0; i--) {
+                if(counts[i] != 0)
+                    return valueOf(i);
+            }
+            return 0;
+        }
+
+        public double getMean() {
+            if(total == 0)
+                return 0;
+            double sum = 0;
+            for(int i = 0; i < counts.length; i++) {
+                sum += (double) counts[i] * valueOf(i);
+            }
+            return sum / total;
+        }
+    }
+}
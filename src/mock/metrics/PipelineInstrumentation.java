@@ -0,0 +1,148 @@
+package mock.metrics;
+
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Wraps the functions and executors of a CompletableFuture pipeline so each named stage records
+ * how long its tasks waited for a thread, how long they ran and how often they completed or threw
+ *
+ * <pre>
+ * CompletableFuture
+ *         .supplyAsync(metrics.supplier("transport", () -> transport.deliveryPayload(payload)), metrics.executor("transport", pool))
+ *         .thenApplyAsync(metrics.function("bundle", this::bundle), metrics.executor("bundle", pool));
+ * </pre>
+ */
+public class PipelineInstrumentation {
+    private final ConcurrentHashMap<String, StageMetrics> stages = new ConcurrentHashMap<>();
+
+    /**
+     * Get the metrics of a stage, creating them on first use
+     *
+     * @param stage - Name of the stage
+     * @return the stage's metrics
+     */
+    public StageMetrics stage(String stage) {
+        StageMetrics metrics = stages.get(stage);
+        return metrics != null ? metrics : stages.computeIfAbsent(stage, StageMetrics::new);
+    }
+
+    /**
+     * Wrap an executor so every task submitted to it records its queue wait under the stage
+     *
+     * @param stage - Name of the stage the executor runs
+     * @param delegate - Executor that runs the tasks
+     * @return the instrumented executor
+     */
+    public Executor executor(String stage, Executor delegate) {
+        StageMetrics metrics = stage(stage);
+        return task -> {
+            long submitted = System.nanoTime();
+            delegate.execute(() -> {
+                metrics.recordQueueWait(System.nanoTime() - submitted);
+                task.run();
+            });
+        };
+    }
+
+    /**
+     * Wrap a supplyAsync supplier
+     */
+    public <T> Supplier<T> supplier(String stage, Supplier<T> supplier) {
+        StageMetrics metrics = stage(stage);
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                T result = supplier.get();
+                metrics.recordCompletion(System.nanoTime() - start);
+                return result;
+            } catch (RuntimeException | Error e) {
+                metrics.recordException(System.nanoTime() - start);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Wrap a thenApply or thenCompose function
+     */
+    public <T, R> Function<T, R> function(String stage, Function<T, R> function) {
+        StageMetrics metrics = stage(stage);
+        return value -> {
+            long start = System.nanoTime();
+            try {
+                R result = function.apply(value);
+                metrics.recordCompletion(System.nanoTime() - start);
+                return result;
+            } catch (RuntimeException | Error e) {
+                metrics.recordException(System.nanoTime() - start);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Wrap a thenCombine or handle function
+     */
+    public <T, U, R> BiFunction<T, U, R> biFunction(String stage, BiFunction<T, U, R> function) {
+        StageMetrics metrics = stage(stage);
+        return (first, second) -> {
+            long start = System.nanoTime();
+            try {
+                R result = function.apply(first, second);
+                metrics.recordCompletion(System.nanoTime() - start);
+                return result;
+            } catch (RuntimeException | Error e) {
+                metrics.recordException(System.nanoTime() - start);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Wrap a transport's delivery as a stage function
+     *
+     * @param stage - Name of the stage
+     * @param transport - Transport doing the delivery
+     * @return a function delivering the payload it is given
+     */
+    public Function<Payload, Payload> delivery(String stage, Transport transport) {
+        return function(stage, transport::deliveryPayload);
+    }
+
+    /**
+     * Take a snapshot of every stage
+     *
+     * @return one snapshot per stage
+     */
+    public List<StageSnapshot> snapshot() {
+        List<StageSnapshot> snapshots = new ArrayList<>(stages.size());
+        for(StageMetrics metrics : stages.values()) {
+            snapshots.add(metrics.snapshot());
+        }
+        snapshots.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return snapshots;
+    }
+
+    /**
+     * Write a snapshot of every stage as a table
+     *
+     * @param out - Stream to write to
+     */
+    public void export(PrintStream out) {
+        StringBuilder table = new StringBuilder(StageSnapshot.HEADER).append(System.lineSeparator());
+        for(StageSnapshot snapshot : snapshot()) {
+            table.append(snapshot).append(System.lineSeparator());
+        }
+        out.print(table);
+    }
+}
@@ -0,0 +1,64 @@
+package mock.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters and histograms recorded for one named pipeline stage
+ */
+public class StageMetrics {
+    private final String name;
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram execution;
+    private final LongAdder completions;
+    private final LongAdder exceptions;
+
+    public StageMetrics(String name) {
+        this.name = name;
+        this.queueWait = new LatencyHistogram();
+        this.execution = new LatencyHistogram();
+        this.completions = new LongAdder();
+        this.exceptions = new LongAdder();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record the time a task spent waiting in its executor's queue
+     *
+     * @param nanos - Time between submission and the task starting
+     */
+    public void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
+    /**
+     * Record a stage that ran to completion
+     *
+     * @param nanos - Execution time of the stage
+     */
+    public void recordCompletion(long nanos) {
+        execution.record(nanos);
+        completions.increment();
+    }
+
+    /**
+     * Record a stage that threw
+     *
+     * @param nanos - Execution time of the stage until it threw
+     */
+    public void recordException(long nanos) {
+        execution.record(nanos);
+        exceptions.increment();
+    }
+
+    /**
+     * Take a point in time copy of the stage's metrics
+     *
+     * @return snapshot of the stage
+     */
+    public StageSnapshot snapshot() {
+        return new StageSnapshot(name, completions.sum(), exceptions.sum(), queueWait.snapshot(), execution.snapshot());
+    }
+}
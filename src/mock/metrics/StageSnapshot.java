@@ -0,0 +1,63 @@
+package mock.metrics;
+
+/**
+ * A point in time copy of a stage's metrics, safe to export while the pipeline keeps running
+ */
+public class StageSnapshot {
+    public static final String HEADER = String.format("%-20s %10s %10s %12s %12s %12s %12s %12s %12s",
+            "Stage", "completed", "failed", "wait p50 us", "wait p99 us", "wait max us", "exec p50 us", "exec p99 us", "exec max us");
+
+    private final String name;
+    private final long completions;
+    private final long exceptions;
+    private final LatencyHistogram.Snapshot queueWait;
+    private final LatencyHistogram.Snapshot execution;
+
+    public StageSnapshot(String name, long completions, long exceptions, LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot execution) {
+        this.name = name;
+        this.completions = completions;
+        this.exceptions = exceptions;
+        this.queueWait = queueWait;
+        this.execution = execution;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCompletions() {
+        return completions;
+    }
+
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * Get the time tasks of this stage waited for a thread, only recorded on instrumented executors
+     *
+     * @return queue wait distribution in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Get the time the stage's function ran for
+     *
+     * @return execution time distribution in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getExecution() {
+        return execution;
+    }
+
+    /**
+     * Format the snapshot as one row matching HEADER
+     */
+    @Override
+    public String toString() {
+        return String.format("%-20s %10d %10d %12.1f %12.1f %12.1f %12.1f %12.1f %12.1f", name, completions, exceptions,
+                queueWait.getValueAtQuantile(0.50) / 1_000d, queueWait.getValueAtQuantile(0.99) / 1_000d, queueWait.getMax() / 1_000d,
+                execution.getValueAtQuantile(0.50) / 1_000d, execution.getValueAtQuantile(0.99) / 1_000d, execution.getMax() / 1_000d);
+    }
+}
@@ -0,0 +1,302 @@
+package mock.pipeline;
+
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.concurrent.WorkerHandle;
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A pipeline stage between packages and trucks that bounds how much work is live at once
+ * At most maxInFlight deliveries run on the executor and at most queueDepth more wait for a free slot.
+ * A new payload is only admitted once an earlier delivery has completed, so memory stays flat
+ * however many payloads are pushed through the stage.
+ *
+ * With a timer wheel the stage is deadline-aware: queued payloads are started earliest deadline first,
+ * and a payload still undelivered at its deadline has its future completed with the fallback and its
+ * worker interrupted, or is never started if it was still queued.
+ */
+public class BoundedDeliveryStage {
+    private final Executor executor;
+    private volatile Executor blockingExecutor;
+    private final int maxInFlight;
+    private final int capacity;
+    private final RejectionPolicy rejectionPolicy;
+    // One permit per admitted payload, running or queued
+    private final Semaphore admitted;
+    private final AtomicInteger inFlight;
+    private final Queue<Pending> queue;
+    private final HierarchicalTimerWheel timer;
+    private final Function<Payload, Payload> fallback;
+    private final LongAdder missed;
+
+    /**
+     * @param executor - Executor deliveries run on
+     * @param maxInFlight - Maximum amount of deliveries running at once
+     * @param queueDepth - Maximum amount of admitted payloads waiting for a running slot
+     * @param rejectionPolicy - What to do with a payload once the stage is full
+     */
+    public BoundedDeliveryStage(Executor executor, int maxInFlight, int queueDepth, RejectionPolicy rejectionPolicy) {
+        this(executor, maxInFlight, queueDepth, rejectionPolicy, null, null);
+    }
+
+    /**
+     * @param executor - Executor deliveries run on
+     * @param maxInFlight - Maximum amount of deliveries running at once
+     * @param queueDepth - Maximum amount of admitted payloads waiting for a running slot
+     * @param rejectionPolicy - What to do with a payload once the stage is full
+     * @param timer - Timer enforcing payload deadlines, null to ignore deadlines
+     * @param fallback - Gives the value a future is completed with when its payload misses the deadline
+     */
+    public BoundedDeliveryStage(Executor executor, int maxInFlight, int queueDepth, RejectionPolicy rejectionPolicy,
+                                HierarchicalTimerWheel timer, Function<Payload, Payload> fallback) {
+        if(maxInFlight < 1 || queueDepth < 0)
+            throw new IllegalArgumentException("In-flight limit must be positive and queue depth not negative");
+
+        this.executor = executor;
+        this.blockingExecutor = executor;
+        this.maxInFlight = maxInFlight;
+        this.capacity = maxInFlight + queueDepth;
+        this.rejectionPolicy = rejectionPolicy;
+        this.admitted = new Semaphore(capacity);
+        this.inFlight = new AtomicInteger();
+        this.queue = timer == null ? new ConcurrentLinkedQueue<>() : new PriorityBlockingQueue<>(Math.max(1, capacity), BoundedDeliveryStage::earliestDeadline);
+        this.timer = timer;
+        this.fallback = fallback;
+        this.missed = new LongAdder();
+    }
+
+    /**
+     * Route deliveries of blocking transports to their own executor, e.g. virtual threads,
+     * so they do not park the threads CPU bound deliveries run on
+     *
+     * @param blockingExecutor - Executor deliveries of blocking transports run on
+     */
+    public void setBlockingExecutor(Executor blockingExecutor) {
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    /**
+     * Admit a payload into the stage, applying the rejection policy if the stage is full
+     *
+     * @param transport - Transport the payload is delivered with
+     * @param payload - Payload to be delivered
+     * @return a future completed with the payload once delivered
+     */
+    public CompletableFuture<Payload> submit(Transport transport, Payload payload) {
+        CompletableFuture<Payload> future = new CompletableFuture<>();
+        if(!admitted.tryAcquire()) {
+            switch (rejectionPolicy) {
+                case BLOCK:
+                    try {
+                        admitted.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        future.completeExceptionally(e);
+                        return future;
+                    }
+                    break;
+                case CALLER_RUNS:
+                    try {
+                        future.complete(transport.deliveryPayload(payload));
+                    } catch (Throwable throwable) {
+                        future.completeExceptionally(throwable);
+                    }
+                    return future;
+                default:
+                    future.completeExceptionally(new RejectedExecutionException("Delivery stage is full"));
+                    return future;
+            }
+        }
+
+        Pending pending = new Pending(transport, payload, future, timer == null ? Payload.NO_DEADLINE : payload.getDeadline());
+        future.whenComplete((result, throwable) -> {
+            // Done while still queued, by its deadline or a cancel, so it no longer takes a place in the queue
+            if(!pending.started)
+                queue.remove(pending);
+            // Cancelling the future stops its delivery, the permit is returned here as no one else completes it
+            if(future.isCancelled()) {
+                admitted.release();
+                pending.worker.abort();
+            }
+        });
+        if(pending.deadline != Payload.NO_DEADLINE) {
+            HierarchicalTimerWheel.Timeout timeout;
+            try {
+                timeout = timer.schedule(() -> expire(pending), pending.deadline);
+            } catch (IllegalStateException e) {
+                // The timer is closed, nothing could enforce the deadline
+                admitted.release();
+                future.completeExceptionally(e);
+                return future;
+            }
+            future.whenComplete((result, throwable) -> timeout.cancel());
+        }
+        queue.add(pending);
+        drain();
+        return future;
+    }
+
+    /**
+     * Block until every admitted payload has been delivered
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitIdle() throws InterruptedException {
+        admitted.acquire(capacity);
+        admitted.release(capacity);
+    }
+
+    /**
+     * Get the amount of deliveries currently running
+     *
+     * @return running delivery count
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get the amount of payloads whose future was completed with the fallback
+     *
+     * @return missed deadline count
+     */
+    public long getMissed() {
+        return missed.sum();
+    }
+
+    /**
+     * Get the amount of admitted payloads, running or queued
+     *
+     * @return admitted payload count
+     */
+    public int getAdmitted() {
+        return capacity - admitted.availablePermits();
+    }
+
+    // Start queued payloads while there is a free running slot
+    private void drain() {
+        while(true) {
+            int running = inFlight.get();
+            if(running >= maxInFlight || queue.isEmpty())
+                return;
+            if(!inFlight.compareAndSet(running, running + 1))
+                continue;
+
+            Pending pending = queue.poll();
+            if(pending == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            pending.started = true;
+            // Expired or cancelled before it was removed from the queue
+            if(pending.future.isDone()) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            start(pending);
+        }
+    }
+
+    private void start(Pending pending) {
+        try {
+            Executor target = pending.transport.isBlocking() ? blockingExecutor : executor;
+            target.execute(() -> run(pending));
+        } catch (RejectedExecutionException e) {
+            fail(pending, e);
+            releaseSlot();
+        }
+    }
+
+    private void run(Pending pending) {
+        try {
+            // Missed its deadline while queued, free the slot without delivering
+            if(!pending.worker.enter())
+                return;
+            try {
+                complete(pending, pending.transport.deliveryPayload(pending.payload));
+            } catch (Throwable throwable) {
+                fail(pending, throwable);
+            } finally {
+                pending.worker.exit();
+            }
+        } finally {
+            releaseSlot();
+        }
+    }
+
+    private void expire(Pending pending) {
+        if(pending.future.isDone())
+            return;
+
+        boolean completed;
+        try {
+            completed = complete(pending, fallback.apply(pending.payload));
+        } catch (Throwable throwable) {
+            completed = fail(pending, throwable);
+        }
+        if(completed) {
+            missed.increment();
+            pending.worker.abort();
+        }
+    }
+
+    // Whoever completes the future gives back the admission permit, once dependent stages have run,
+    // so awaitIdle also waits for them
+    private boolean complete(Pending pending, Payload result) {
+        if(!pending.future.complete(result))
+            return false;
+        admitted.release();
+        return true;
+    }
+
+    private boolean fail(Pending pending, Throwable throwable) {
+        if(!pending.future.completeExceptionally(throwable))
+            return false;
+        admitted.release();
+        return true;
+    }
+
+    private void releaseSlot() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    // Compares the deadlines taken at submit time, the payload's own deadline may change while it is queued
+    private static int earliestDeadline(Pending first, Pending second) {
+        long a = first.deadline;
+        long b = second.deadline;
+        if(a == Payload.NO_DEADLINE || b == Payload.NO_DEADLINE)
+            return Boolean.compare(a == Payload.NO_DEADLINE, b == Payload.NO_DEADLINE);
+        // nanoTime values must be compared by difference
+        return Long.signum(a - b);
+    }
+
+    private static class Pending {
+        private final Transport transport;
+        private final Payload payload;
+        private final CompletableFuture<Payload> future;
+        private final WorkerHandle worker;
+        private final long deadline;
+        // Set once taken off the queue
+        private volatile boolean started;
+
+        private Pending(Transport transport, Payload payload, CompletableFuture<Payload> future, long deadline) {
+            this.transport = transport;
+            this.payload = payload;
+            this.future = future;
+            this.worker = new WorkerHandle();
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package mock.pipeline;
+
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consolidates pending payloads going to the same destination into bundled payloads
+ * A bundle is sealed once it holds the max bundle size or once its first payload has waited the max wait time,
+ * then delivered with a single Transport call. Every child payload keeps its own future,
+ * completed when the bundle arrives.
+ * Wait times are tracked on the application's shared timer wheel instead of a scheduler of their own.
+ */
+public class ConsolidationStage implements AutoCloseable {
+    private final Transport transport;
+    private final Executor executor;
+    private final HierarchicalTimerWheel timer;
+    private final int maxBundleSize;
+    private final long maxWaitNanos;
+    // The bundle currently filling up for each destination
+    private final ConcurrentHashMap<Destination, Bundle> open;
+    private final AtomicLong sequence;
+    private final LongAdder bundles;
+    private final LongAdder consolidated;
+
+    /**
+     * @param transport - Transport the bundles are delivered with
+     * @param executor - Executor the bundle deliveries run on
+     * @param timer - Timer sealing bundles that waited the max wait time, may be null when the max wait is 0
+     * @param maxBundleSize - Maximum amount of payloads in a bundle
+     * @param maxWait - Longest time the first payload of a bundle waits for it to fill up, 0 to wait for a full bundle
+     * @param unit - Unit of the max wait time
+     */
+    public ConsolidationStage(Transport transport, Executor executor, HierarchicalTimerWheel timer, int maxBundleSize, long maxWait, TimeUnit unit) {
+        if(maxBundleSize < 1)
+            throw new IllegalArgumentException("Bundle size must be positive");
+        if(maxWait > 0 && timer == null)
+            throw new IllegalArgumentException("A max wait time needs a timer");
+
+        this.transport = transport;
+        this.executor = executor;
+        this.timer = timer;
+        this.maxBundleSize = maxBundleSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.open = new ConcurrentHashMap<>();
+        this.sequence = new AtomicLong();
+        this.bundles = new LongAdder();
+        this.consolidated = new LongAdder();
+    }
+
+    /**
+     * Add a payload to the open bundle of its destination
+     *
+     * @param payload - Payload with a destination
+     * @return a future completed with the payload once its bundle has arrived
+     */
+    public CompletableFuture<Payload> submit(Payload payload) {
+        Destination destination = payload.getDestination();
+        if(destination == null)
+            throw new IllegalArgumentException("Payload " + payload.getName() + " has no destination to consolidate on");
+
+        CompletableFuture<Payload> future = new CompletableFuture<>();
+        Bundle[] sealed = new Bundle[1];
+        Bundle[] started = new Bundle[1];
+        // compute runs under the lock of the destination's bin, so the size trigger and the wait timer
+        // can never both seal the same bundle
+        open.compute(destination, (key, bundle) -> {
+            if(bundle == null) {
+                bundle = new Bundle(new Payload<>("Bundle-" + key + "-" + sequence.incrementAndGet(), null, payload.getOrigin(), key));
+                started[0] = bundle;
+            }
+            bundle.add(payload, future);
+            if(bundle.size() < maxBundleSize)
+                return bundle;
+            sealed[0] = bundle;
+            return null;
+        });
+
+        if(sealed[0] != null) {
+            dispatch(sealed[0]);
+        } else if(started[0] != null && maxWaitNanos > 0) {
+            Bundle waiting = started[0];
+            try {
+                timer.schedule(() -> seal(destination, waiting), System.nanoTime() + maxWaitNanos);
+            } catch (IllegalStateException e) {
+                // The timer is closed, nothing would ever seal the bundle so it leaves right away
+                seal(destination, waiting);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Deliver every open bundle even if it is not full
+     */
+    public void flush() {
+        for(Destination destination : open.keySet()) {
+            Bundle bundle = open.remove(destination);
+            if(bundle != null)
+                dispatch(bundle);
+        }
+    }
+
+    /**
+     * Get the amount of bundles delivered so far
+     *
+     * @return delivered bundle count
+     */
+    public long getBundles() {
+        return bundles.sum();
+    }
+
+    /**
+     * Get the amount of payloads delivered inside a bundle so far
+     *
+     * @return delivered payload count
+     */
+    public long getConsolidated() {
+        return consolidated.sum();
+    }
+
+    private void seal(Destination destination, Bundle bundle) {
+        // Already sealed when it filled up or by a flush
+        if(open.remove(destination, bundle))
+            dispatch(bundle);
+    }
+
+    private void dispatch(Bundle bundle) {
+        try {
+            executor.execute(() -> deliver(bundle));
+        } catch (RuntimeException e) {
+            bundle.fail(e);
+        }
+    }
+
+    private void deliver(Bundle bundle) {
+        try {
+            transport.deliveryPayload(bundle.payload);
+        } catch (Throwable throwable) {
+            bundle.fail(throwable);
+            return;
+        }
+        bundles.increment();
+        consolidated.add(bundle.size());
+        bundle.arrive();
+    }
+
+    /**
+     * Deliver whatever is still waiting in an open bundle
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * A bundled payload and the futures of its children, only modified while its bin is locked
+     */
+    private static class Bundle {
+        private final Payload<Void> payload;
+        private final List<CompletableFuture<Payload>> futures;
+
+        private Bundle(Payload<Void> payload) {
+            this.payload = payload;
+            this.futures = new ArrayList<>();
+        }
+
+        private void add(Payload child, CompletableFuture<Payload> future) {
+            payload.addBundle(child);
+            futures.add(future);
+        }
+
+        private int size() {
+            return futures.size();
+        }
+
+        private void arrive() {
+            Destination destination = payload.getDestination();
+            payload.setCurrentLocation(destination);
+            int i = 0;
+            for(Payload child : payload.getBundle()) {
+                child.setCurrentLocation(destination);
+                futures.get(i++).complete(child);
+            }
+        }
+
+        private void fail(Throwable throwable) {
+            for(CompletableFuture<Payload> future : futures) {
+                future.completeExceptionally(throwable);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package mock.pipeline;
+
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups single payload deliveries into batches so that one task, instead of one task per payload,
+ * is submitted to the executor
+ * A batch is dispatched once it reaches the batch size or once its first payload has waited the max linger time.
+ * Each payload still gets its own future, completed from inside the batch task.
+ * Linger times are tracked on the application's shared timer wheel instead of a scheduler of their own.
+ */
+public class DeliveryBatcher implements AutoCloseable {
+    private final Transport transport;
+    private final Executor executor;
+    private final HierarchicalTimerWheel timer;
+    private final int batchSize;
+    private final long maxLingerNanos;
+    private final Object lock = new Object();
+
+    private Payload[] payloads;
+    private CompletableFuture<Payload>[] futures;
+    private int count;
+    // Incremented on every dispatch so a stale linger timer does not flush a newer batch
+    private long generation;
+
+    /**
+     * @param transport - Transport the batches are delivered with
+     * @param executor - Executor the batch tasks run on
+     * @param timer - Timer flushing batches that lingered the max linger time, may be null when the max linger is 0
+     * @param batchSize - Maximum amount of payloads delivered by a single task
+     * @param maxLinger - Longest time the first payload of a batch waits for the batch to fill up, 0 to wait for a full batch
+     * @param unit - Unit of the max linger time
+     */
+    public DeliveryBatcher(Transport transport, Executor executor, HierarchicalTimerWheel timer, int batchSize, long maxLinger, TimeUnit unit) {
+        if(batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive");
+        if(maxLinger > 0 && timer == null)
+            throw new IllegalArgumentException("A max linger time needs a timer");
+
+        this.transport = transport;
+        this.executor = executor;
+        this.timer = timer;
+        this.batchSize = batchSize;
+        this.maxLingerNanos = unit.toNanos(maxLinger);
+        reset();
+    }
+
+    /**
+     * Queue a payload into the current batch
+     *
+     * @param payload - Payload to be delivered
+     * @return a future completed with the payload once its batch has been delivered
+     */
+    public CompletableFuture<Payload> submit(Payload payload) {
+        CompletableFuture<Payload> future = new CompletableFuture<>();
+        Payload[] fullPayloads = null;
+        CompletableFuture<Payload>[] fullFutures = null;
+        boolean startLinger = false;
+        long lingerGeneration = 0;
+
+        synchronized (lock) {
+            payloads[count] = payload;
+            futures[count] = future;
+            count++;
+            if(count == batchSize) {
+                fullPayloads = payloads;
+                fullFutures = futures;
+                reset();
+            } else if(count == 1 && maxLingerNanos > 0) {
+                startLinger = true;
+                lingerGeneration = generation;
+            }
+        }
+
+        if(fullPayloads != null) {
+            dispatch(fullPayloads, fullFutures, batchSize);
+        } else if(startLinger) {
+            long scheduledGeneration = lingerGeneration;
+            try {
+                timer.schedule(() -> flush(scheduledGeneration), System.nanoTime() + maxLingerNanos);
+            } catch (IllegalStateException e) {
+                // The timer is closed, nothing would ever flush the batch so it leaves right away
+                flush(scheduledGeneration);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Split the payloads into batches and deliver each batch with its own task
+     *
+     * @param payloads - Payloads to be delivered
+     * @return one future per batch, completed with the payloads of that batch
+     */
+    public List<CompletableFuture<List<Payload>>> deliverBatches(List<Payload> payloads) {
+        List<CompletableFuture<List<Payload>>> batches = new ArrayList<>((payloads.size() + batchSize - 1) / batchSize);
+        for(int from = 0; from < payloads.size(); from += batchSize) {
+            List<Payload> batch = payloads.subList(from, Math.min(from + batchSize, payloads.size()));
+            batches.add(CompletableFuture.supplyAsync(() -> transport.deliverBatch(batch), executor));
+        }
+        return batches;
+    }
+
+    /**
+     * Dispatch the current batch even if it is not full
+     */
+    public void flush() {
+        flush(-1);
+    }
+
+    // Dispatch the current batch if it is still the given generation, -1 dispatches whatever batch is current
+    // Checking and swapping under one lock keeps a timer from flushing a batch that replaced the one it was set for
+    private void flush(long expectedGeneration) {
+        Payload[] pendingPayloads;
+        CompletableFuture<Payload>[] pendingFutures;
+        int pendingCount;
+        synchronized (lock) {
+            if(count == 0 || expectedGeneration != -1 && generation != expectedGeneration)
+                return;
+            pendingPayloads = payloads;
+            pendingFutures = futures;
+            pendingCount = count;
+            reset();
+        }
+        dispatch(pendingPayloads, pendingFutures, pendingCount);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void reset() {
+        payloads = new Payload[batchSize];
+        futures = new CompletableFuture[batchSize];
+        count = 0;
+        generation++;
+    }
+
+    private void dispatch(Payload[] batchPayloads, CompletableFuture<Payload>[] batchFutures, int size) {
+        try {
+            executor.execute(() -> deliver(batchPayloads, batchFutures, size));
+        } catch (RuntimeException e) {
+            for(int i = 0; i < size; i++) {
+                batchFutures[i].completeExceptionally(e);
+            }
+        }
+    }
+
+    private void deliver(Payload[] batchPayloads, CompletableFuture<Payload>[] batchFutures, int size) {
+        for(int i = 0; i < size; i++) {
+            // A cancelled or timed out payload is skipped instead of delaying the rest of the batch
+            if(batchFutures[i].isDone())
+                continue;
+            try {
+                batchFutures[i].complete(transport.deliveryPayload(batchPayloads[i]));
+            } catch (Throwable throwable) {
+                batchFutures[i].completeExceptionally(throwable);
+            }
+        }
+        Arrays.fill(batchPayloads, null);
+    }
+
+    /**
+     * Dispatch whatever is still waiting in the current batch
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,231 @@
+package mock.pipeline;
+
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoizes idempotent deliveries, keyed by payload name and destination
+ *
+ * The first request for a key starts the delivery, every request for the same key made while it runs
+ * shares its future instead of starting the work again, and later requests get the delivered payload
+ * until it expires. A failed delivery is not cached.
+ * Entries expire the given time after their delivery completed, and the oldest completed entries are
+ * evicted once the cache holds more than the max size. Running deliveries are never evicted, so the cache
+ * may briefly hold more than the max size while they run.
+ */
+public class DeliveryCache {
+    private final Transport transport;
+    private final Executor executor;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<Key, Entry> entries;
+    // Entries in insertion order, the head is evicted first
+    private final ConcurrentLinkedQueue<Entry> order;
+    private final AtomicInteger orderSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * @param transport - Transport the deliveries are made with
+     * @param executor - Executor the deliveries run on
+     * @param maxSize - Maximum amount of cached deliveries
+     * @param ttl - Time a delivered payload stays cached
+     * @param unit - Unit of the time to live
+     */
+    public DeliveryCache(Transport transport, Executor executor, int maxSize, long ttl, TimeUnit unit) {
+        if(maxSize < 1)
+            throw new IllegalArgumentException("Cache size must be positive");
+
+        this.transport = transport;
+        this.executor = executor;
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new ConcurrentHashMap<>();
+        this.order = new ConcurrentLinkedQueue<>();
+        this.orderSize = new AtomicInteger();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Deliver the payload unless a delivery with the same name and destination is cached or running
+     * Every caller gets its own copy of the shared future, completing or cancelling it never affects the others
+     *
+     * @param payload - Payload to be delivered
+     * @return a future completed with the delivered payload, which is the first payload delivered for the key
+     */
+    public CompletableFuture<Payload> deliver(Payload payload) {
+        Key key = new Key(payload.getName(), payload.getDestination());
+        while(true) {
+            Entry entry = entries.get(key);
+            if(entry != null) {
+                if(!entry.isExpired(System.nanoTime())) {
+                    hits.increment();
+                    return share(entry);
+                }
+                evict(entry);
+                continue;
+            }
+
+            Entry created = new Entry(key);
+            if(entries.putIfAbsent(key, created) != null)
+                continue;
+            misses.increment();
+            order.add(created);
+            orderSize.incrementAndGet();
+            trim();
+            start(created, payload);
+            return share(created);
+        }
+    }
+
+    /**
+     * Deliver the payload on the calling thread's behalf, waiting for the result
+     *
+     * @param payload - Payload to be delivered
+     * @return the delivered payload
+     */
+    public Payload deliveryPayload(Payload payload) {
+        return deliver(payload).join();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the amount of cached and running deliveries
+     *
+     * @return entry count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    // Unlike CompletableFuture.copy, the failure is passed on as is rather than wrapped in a CompletionException
+    private static CompletableFuture<Payload> share(Entry entry) {
+        CompletableFuture<Payload> copy = new CompletableFuture<>();
+        entry.future.whenComplete((result, throwable) -> {
+            if(throwable != null)
+                copy.completeExceptionally(throwable);
+            else
+                copy.complete(result);
+        });
+        return copy;
+    }
+
+    private void start(Entry entry, Payload payload) {
+        try {
+            executor.execute(() -> {
+                try {
+                    Payload delivered = transport.deliveryPayload(payload);
+                    entry.expiresAt = System.nanoTime() + ttlNanos;
+                    entry.future.complete(delivered);
+                } catch (Throwable throwable) {
+                    // Failures are not cached, the next request tries again
+                    entries.remove(entry.key, entry);
+                    entry.future.completeExceptionally(throwable);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entries.remove(entry.key, entry);
+            entry.future.completeExceptionally(e);
+        }
+    }
+
+    // Evict the oldest completed entries, expired or not, until the cache is back within its size
+    // Running deliveries are skipped, evicting one would let the next request for its key start it again
+    private void trim() {
+        Iterator<Entry> oldest = order.iterator();
+        while(entries.size() > maxSize && oldest.hasNext()) {
+            Entry entry = oldest.next();
+            boolean cached = entries.get(entry.key) == entry;
+            if(cached && !entry.future.isDone())
+                continue;
+            if(order.remove(entry))
+                orderSize.decrementAndGet();
+            if(cached)
+                evict(entry);
+        }
+        // Entries that expired or failed are left in the order queue, purge them before it outgrows the cache
+        if(orderSize.get() > 2 * maxSize) {
+            order.removeIf(entry -> {
+                if(entries.get(entry.key) == entry)
+                    return false;
+                orderSize.decrementAndGet();
+                return true;
+            });
+        }
+    }
+
+    private void evict(Entry entry) {
+        if(entries.remove(entry.key, entry))
+            evictions.increment();
+    }
+
+    private static class Entry {
+        private final Key key;
+        private final CompletableFuture<Payload> future;
+        // Written before the future completes, so it is visible once isDone returns true
+        private volatile long expiresAt;
+
+        private Entry(Key key) {
+            this.key = key;
+            this.future = new CompletableFuture<>();
+        }
+
+        // A running delivery never expires
+        private boolean isExpired(long now) {
+            return future.isDone() && now - expiresAt >= 0;
+        }
+    }
+
+    private static final class Key {
+        private final String name;
+        private final Destination destination;
+        private final int hash;
+
+        private Key(String name, Destination destination) {
+            this.name = name;
+            this.destination = destination;
+            this.hash = 31 * Objects.hashCode(name) + Objects.hashCode(destination);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(this == other)
+                return true;
+            if(!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return Objects.equals(name, key.name) && Objects.equals(destination, key.destination);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package mock.pipeline;
+
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+/**
+ * A single delivery attempt of a payload with a given truck
+ * Lets failures be simulated through Transport.deliveryPayload(payload, shouldFail)
+ */
+@FunctionalInterface
+public interface DeliveryCall {
+
+    /**
+     * Deliver the payload with the truck on the calling thread
+     *
+     * @param transport - Truck making the attempt
+     * @param payload - Payload to be delivered
+     * @return the delivered payload
+     * @throws Exception if the attempt failed
+     */
+    Payload deliver(Transport transport, Payload payload) throws Exception;
+}
@@ -0,0 +1,155 @@
+package mock.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free circuit breaker and concurrency bulkhead for every destination, indexed by destination id
+ *
+ * A destination's circuit opens after failureThreshold consecutive failures and rejects its payloads
+ * for the open duration. Once that has passed, exactly one payload is let through as a probe:
+ * its success closes the circuit, its failure keeps it open for another open duration.
+ * The bulkhead caps how many deliveries to one destination are live at once, so a slow or failing
+ * headquarters cannot take every thread and in-flight slot away from the healthy ones.
+ * Payloads over the cap are rejected like those of an open circuit: a backlog to one destination
+ * is shed instead of queueing in front of everyone else.
+ */
+public class DestinationGuard {
+    private static final long CLOSED = 0;
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int maxConcurrent;
+    private final AtomicIntegerArray failures;
+    // CLOSED, or the nanoTime until which the circuit stays open
+    private final AtomicLongArray openUntil;
+    private final AtomicIntegerArray inFlight;
+    private final LongAdder rejectedOpen;
+    private final LongAdder rejectedFull;
+
+    /**
+     * @param capacity - Amount of destination ids guarded, ids go from 0 to capacity - 1
+     * @param failureThreshold - Consecutive failures that open a destination's circuit
+     * @param openDuration - Time an open circuit rejects payloads before probing again
+     * @param unit - Unit of the open duration
+     * @param maxConcurrent - Maximum amount of live deliveries per destination
+     */
+    public DestinationGuard(int capacity, int failureThreshold, long openDuration, TimeUnit unit, int maxConcurrent) {
+        if(failureThreshold < 1 || maxConcurrent < 1)
+            throw new IllegalArgumentException("Failure threshold and concurrency limit must be positive");
+
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+        this.maxConcurrent = maxConcurrent;
+        this.failures = new AtomicIntegerArray(capacity);
+        this.openUntil = new AtomicLongArray(capacity);
+        this.inFlight = new AtomicIntegerArray(capacity);
+        this.rejectedOpen = new LongAdder();
+        this.rejectedFull = new LongAdder();
+    }
+
+    /**
+     * Try to start a delivery to the destination
+     * Every admitted delivery must be followed by exactly one call to onSuccess, onFailure or release
+     *
+     * @param id - Destination id
+     * @return True if the delivery may start, false if the circuit is open or the bulkhead is full
+     */
+    public boolean tryAcquire(int id) {
+        long until = openUntil.get(id);
+        if(until != CLOSED) {
+            long now = System.nanoTime();
+            // Still open, or another payload already claimed the probe
+            if(now - until < 0 || !openUntil.compareAndSet(id, until, openDeadline(now))) {
+                rejectedOpen.increment();
+                return false;
+            }
+        }
+
+        if(inFlight.incrementAndGet(id) > maxConcurrent) {
+            inFlight.decrementAndGet(id);
+            rejectedFull.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record a successful delivery, closing the destination's circuit
+     *
+     * @param id - Destination id
+     */
+    public void onSuccess(int id) {
+        inFlight.decrementAndGet(id);
+        failures.set(id, 0);
+        openUntil.set(id, CLOSED);
+    }
+
+    /**
+     * Record a failed delivery, opening the destination's circuit once the threshold is reached
+     *
+     * @param id - Destination id
+     */
+    public void onFailure(int id) {
+        inFlight.decrementAndGet(id);
+        if(failures.incrementAndGet(id) >= failureThreshold)
+            openUntil.set(id, openDeadline(System.nanoTime()));
+    }
+
+    /**
+     * Give back the slot of a delivery that never ran, e.g. because the pipeline rejected it
+     * Neither a success nor a failure is recorded, a released probe leaves the circuit open until the next probe
+     *
+     * @param id - Destination id
+     */
+    public void release(int id) {
+        inFlight.decrementAndGet(id);
+    }
+
+    /**
+     * Determines if the destination currently rejects its payloads
+     *
+     * @param id - Destination id
+     * @return True if the circuit is open, false if closed or ready to probe
+     */
+    public boolean isOpen(int id) {
+        long until = openUntil.get(id);
+        return until != CLOSED && System.nanoTime() - until < 0;
+    }
+
+    /**
+     * Get the amount of live deliveries to the destination
+     *
+     * @param id - Destination id
+     * @return live delivery count
+     */
+    public int getInFlight(int id) {
+        return inFlight.get(id);
+    }
+
+    /**
+     * Get the amount of payloads rejected because their destination's circuit was open
+     *
+     * @return rejected payload count
+     */
+    public long getRejectedOpen() {
+        return rejectedOpen.sum();
+    }
+
+    /**
+     * Get the amount of payloads rejected because their destination's bulkhead was full
+     *
+     * @return rejected payload count
+     */
+    public long getRejectedFull() {
+        return rejectedFull.sum();
+    }
+
+    // Never CLOSED, even if nanoTime happens to land on it
+    private long openDeadline(long now) {
+        long until = now + openNanos;
+        return until == CLOSED ? 1 : until;
+    }
+}
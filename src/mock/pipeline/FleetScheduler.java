@@ -0,0 +1,232 @@
+package mock.pipeline;
+
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns payloads to a fleet of trucks, each with its own queue of payloads
+ * A truck works through its own queue front to back and, once it is empty, steals from the back
+ * of the other trucks' queues, so fast trucks keep delivering while slow ones still have a backlog.
+ * At most one task per truck runs on the executor at a time.
+ */
+public class FleetScheduler {
+    private final Truck[] trucks;
+    private final Executor executor;
+    private final AtomicInteger next;
+    private final long createdNanos;
+
+    /**
+     * @param trucks - Trucks of the fleet
+     * @param executor - Executor the trucks' delivery tasks run on
+     */
+    public FleetScheduler(List<Transport> trucks, Executor executor) {
+        if(trucks.isEmpty())
+            throw new IllegalArgumentException("At least one truck is needed");
+
+        this.trucks = new Truck[trucks.size()];
+        for(int i = 0; i < this.trucks.length; i++) {
+            this.trucks[i] = new Truck(i, trucks.get(i));
+        }
+        this.executor = executor;
+        this.next = new AtomicInteger();
+        this.createdNanos = System.nanoTime();
+    }
+
+    /**
+     * Queue a payload on the next truck in turn, idle trucks steal it if that truck is busy
+     *
+     * @param payload - Payload to be delivered
+     * @return a future completed with the payload once a truck has delivered it
+     */
+    public CompletableFuture<Payload> submit(Payload payload) {
+        return submit(Math.floorMod(next.getAndIncrement(), trucks.length), payload);
+    }
+
+    /**
+     * Queue a payload on a given truck, idle trucks steal it if that truck is busy
+     *
+     * @param truck - Index of the truck
+     * @param payload - Payload to be delivered
+     * @return a future completed with the payload once a truck has delivered it
+     */
+    public CompletableFuture<Payload> submit(int truck, Payload payload) {
+        CompletableFuture<Payload> future = new CompletableFuture<>();
+        trucks[truck].queue.addLast(new Assignment(payload, future));
+        if(!activate(trucks[truck]))
+            activateIdle();
+        return future;
+    }
+
+    /**
+     * Get the amount of trucks in the fleet
+     *
+     * @return truck count
+     */
+    public int size() {
+        return trucks.length;
+    }
+
+    /**
+     * Get the share of time a truck has spent delivering since the fleet was created
+     *
+     * @param truck - Index of the truck
+     * @return utilization between 0 and 1
+     */
+    public double getUtilization(int truck) {
+        long elapsed = System.nanoTime() - createdNanos;
+        return elapsed == 0 ? 0 : Math.min(1.0, (double) trucks[truck].busyNanos / elapsed);
+    }
+
+    /**
+     * Get the amount of payloads a truck has delivered, stolen ones included
+     *
+     * @param truck - Index of the truck
+     * @return delivered payload count
+     */
+    public long getDelivered(int truck) {
+        return trucks[truck].delivered;
+    }
+
+    /**
+     * Get the amount of payloads a truck has taken from other trucks' queues
+     *
+     * @param truck - Index of the truck
+     * @return stolen payload count
+     */
+    public long getStolen(int truck) {
+        return trucks[truck].stolen;
+    }
+
+    /**
+     * Get the amount of payloads waiting in a truck's queue
+     *
+     * @param truck - Index of the truck
+     * @return queued payload count
+     */
+    public int getQueued(int truck) {
+        return trucks[truck].queue.size();
+    }
+
+    // Start the truck's task unless it is already running
+    private boolean activate(Truck truck) {
+        if(!truck.active.compareAndSet(false, true))
+            return false;
+        try {
+            executor.execute(() -> drain(truck));
+        } catch (RejectedExecutionException e) {
+            truck.active.set(false);
+            Assignment assignment;
+            while((assignment = truck.queue.pollFirst()) != null) {
+                assignment.future.completeExceptionally(e);
+            }
+        }
+        return true;
+    }
+
+    // Wake one idle truck so it can steal from the busy ones
+    private void activateIdle() {
+        for(Truck truck : trucks) {
+            if(!truck.active.get() && activate(truck))
+                return;
+        }
+    }
+
+    private void drain(Truck truck) {
+        while(true) {
+            Assignment assignment = truck.queue.pollFirst();
+            if(assignment == null)
+                assignment = steal(truck);
+            if(assignment != null) {
+                deliver(truck, assignment);
+                continue;
+            }
+
+            truck.active.set(false);
+            // A payload queued between the last poll and going idle would otherwise wait for the next submit
+            if(!hasQueued() || !truck.active.compareAndSet(false, true))
+                return;
+        }
+    }
+
+    private Assignment steal(Truck thief) {
+        for(int i = 1; i < trucks.length; i++) {
+            Truck victim = trucks[(thief.index + i) % trucks.length];
+            Assignment assignment = victim.queue.pollLast();
+            if(assignment != null) {
+                thief.stolen++;
+                return assignment;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasQueued() {
+        for(Truck truck : trucks) {
+            if(!truck.queue.isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    private void deliver(Truck truck, Assignment assignment) {
+        // Cancelled while queued
+        if(assignment.future.isDone())
+            return;
+
+        long start = System.nanoTime();
+        Payload result = null;
+        Throwable failure = null;
+        try {
+            result = truck.transport.deliveryPayload(assignment.payload);
+        } catch (Throwable throwable) {
+            failure = throwable;
+        }
+        // Statistics are updated before completing so they are visible to whoever joins the future
+        truck.busyNanos += System.nanoTime() - start;
+        truck.delivered++;
+        if(failure == null)
+            assignment.future.complete(result);
+        else
+            assignment.future.completeExceptionally(failure);
+    }
+
+    /**
+     * A truck, its queue and its statistics
+     * The statistics are only written by the truck's running task, the active flag hands them
+     * from one task to the next
+     */
+    private static class Truck {
+        private final int index;
+        private final Transport transport;
+        private final ConcurrentLinkedDeque<Assignment> queue;
+        private final AtomicBoolean active;
+        private volatile long busyNanos;
+        private volatile long delivered;
+        private volatile long stolen;
+
+        private Truck(int index, Transport transport) {
+            this.index = index;
+            this.transport = transport;
+            this.queue = new ConcurrentLinkedDeque<>();
+            this.active = new AtomicBoolean();
+        }
+    }
+
+    private static class Assignment {
+        private final Payload payload;
+        private final CompletableFuture<Payload> future;
+
+        private Assignment(Payload payload, CompletableFuture<Payload> future) {
+            this.payload = payload;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package mock.pipeline;
+
+import mock.entity.Destination;
+import mock.entity.Payload;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Streams payloads out of a manifest file without ever holding the whole manifest on the heap
+ * The file is read through a FileChannel into one reusable buffer and each line is parsed
+ * into a Payload as soon as it is complete.
+ *
+ * Manifest lines have the form: name,origin,destination,contents
+ * Blank lines and lines starting with '#' are skipped.
+ */
+public class ManifestReader implements PayloadSource {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Path manifest;
+    private final Function<String, Destination> destinations;
+    private final int bufferSize;
+    private long bytesRead;
+    private long linesRead;
+    // Every line of the file including skipped ones, so errors point at the right line
+    private long lineNumber;
+
+    /**
+     * @param manifest - Manifest file to read
+     * @param destinations - Resolves a destination name from the manifest to its Destination
+     */
+    public ManifestReader(Path manifest, Function<String, Destination> destinations) {
+        this(manifest, destinations, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param manifest - Manifest file to read
+     * @param destinations - Resolves a destination name from the manifest to its Destination
+     * @param bufferSize - Size of the read buffer, which is also the longest supported line
+     */
+    public ManifestReader(Path manifest, Function<String, Destination> destinations, int bufferSize) {
+        this.manifest = manifest;
+        this.destinations = destinations;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void forEach(Consumer<Payload> consumer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        byte[] bytes = buffer.array();
+        bytesRead = 0;
+        linesRead = 0;
+        lineNumber = 0;
+
+        try (FileChannel channel = FileChannel.open(manifest, StandardOpenOption.READ)) {
+            while(true) {
+                int read = channel.read(buffer);
+                if(read > 0)
+                    bytesRead += read;
+
+                int end = buffer.position();
+                int lineStart = 0;
+                for(int i = 0; i < end; i++) {
+                    if(bytes[i] == '\n') {
+                        parseLine(bytes, lineStart, i, consumer);
+                        lineStart = i + 1;
+                    }
+                }
+
+                if(read < 0) {
+                    // Last line without a trailing newline
+                    if(lineStart < end)
+                        parseLine(bytes, lineStart, end, consumer);
+                    return;
+                }
+                if(lineStart == 0 && end == bytes.length)
+                    throw new IOException("Manifest line longer than " + bufferSize + " bytes in " + manifest);
+
+                // Keep the partial line and read the rest of it behind it
+                System.arraycopy(bytes, lineStart, bytes, 0, end - lineStart);
+                buffer.position(end - lineStart);
+            }
+        }
+    }
+
+    private void parseLine(byte[] bytes, int start, int end, Consumer<Payload> consumer) throws IOException {
+        lineNumber++;
+        if(end > start && bytes[end - 1] == '\r')
+            end--;
+        if(start == end || bytes[start] == '#')
+            return;
+
+        int nameEnd = indexOf(bytes, start, end);
+        int originEnd = indexOf(bytes, nameEnd + 1, end);
+        int destinationEnd = indexOf(bytes, originEnd + 1, end);
+        if(destinationEnd == end)
+            throw new IOException("Malformed manifest line " + lineNumber + " in " + manifest);
+
+        String name = new String(bytes, start, nameEnd - start, StandardCharsets.UTF_8);
+        Destination origin = destinations.apply(new String(bytes, nameEnd + 1, originEnd - nameEnd - 1, StandardCharsets.UTF_8));
+        Destination destination = destinations.apply(new String(bytes, originEnd + 1, destinationEnd - originEnd - 1, StandardCharsets.UTF_8));
+        String contents = new String(bytes, destinationEnd + 1, end - destinationEnd - 1, StandardCharsets.UTF_8);
+
+        linesRead++;
+        consumer.accept(new Payload<>(name, contents, origin, destination));
+    }
+
+    private static int indexOf(byte[] bytes, int from, int end) {
+        for(int i = from; i < end; i++) {
+            if(bytes[i] == ',')
+                return i;
+        }
+        return end;
+    }
+
+    /**
+     * Get the amount of bytes read by the last pass over the manifest
+     *
+     * @return bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Get the amount of payloads parsed by the last pass over the manifest
+     *
+     * @return payloads parsed
+     */
+    public long getLinesRead() {
+        return linesRead;
+    }
+}
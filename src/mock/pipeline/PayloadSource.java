@@ -0,0 +1,20 @@
+package mock.pipeline;
+
+import mock.entity.Payload;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * A source that pushes its payloads one by one instead of handing out a materialized list
+ */
+public interface PayloadSource {
+
+    /**
+     * Push every payload of the source to the consumer, in order, on the calling thread
+     *
+     * @param consumer - Receives each payload as soon as it has been produced
+     * @throws IOException if the payloads could not be read
+     */
+    void forEach(Consumer<Payload> consumer) throws IOException;
+}
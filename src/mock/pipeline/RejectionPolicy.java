@@ -0,0 +1,19 @@
+package mock.pipeline;
+
+/**
+ * What a bounded stage does with a payload once both its in-flight window and its queue are full
+ */
+public enum RejectionPolicy {
+    /**
+     * Block the submitting thread until a delivery completes
+     */
+    BLOCK,
+    /**
+     * Fail the payload's future with a RejectedExecutionException
+     */
+    FAIL,
+    /**
+     * Deliver the payload on the submitting thread, which throttles the producer
+     */
+    CALLER_RUNS
+}
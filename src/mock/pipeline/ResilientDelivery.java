@@ -0,0 +1,291 @@
+package mock.pipeline;
+
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.concurrent.InterruptibleFuture;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers payloads with retries and hedged requests around the trucks' delivery calls
+ *
+ * A failed attempt is retried after an exponential backoff with jitter. The backoff is a timer wheel
+ * entry, no thread sleeps while waiting for the next attempt.
+ * With hedging enabled, an attempt still running past the configured latency quantile of earlier
+ * deliveries gets a second delivery started on another truck. The first of the two to succeed wins
+ * and the other one is cancelled, interrupting its worker.
+ */
+public class ResilientDelivery {
+    // Successful deliveries between two recomputations of the hedge delay
+    private static final int REFRESH_INTERVAL = 128;
+
+    private final List<Transport> trucks;
+    private final Executor executor;
+    private final HierarchicalTimerWheel timer;
+    private final DeliveryCall call;
+    private final AtomicInteger next;
+    private final LatencyHistogram latency;
+    private final AtomicLong recorded;
+    private final LongAdder attempts;
+    private final LongAdder retries;
+    private final LongAdder hedges;
+    private final LongAdder hedgeWins;
+
+    private volatile int maxAttempts;
+    private volatile long initialBackoffNanos;
+    private volatile long maxBackoffNanos;
+    private volatile double hedgeQuantile;
+    private volatile int hedgeMinSamples;
+    // Negative until enough deliveries have been recorded, or when hedging is disabled
+    private volatile long hedgeDelayNanos;
+
+    /**
+     * @param trucks - Trucks the attempts are spread over
+     * @param executor - Executor the attempts run on
+     * @param timer - Timer scheduling the backoffs and hedges
+     */
+    public ResilientDelivery(List<Transport> trucks, Executor executor, HierarchicalTimerWheel timer) {
+        this(trucks, executor, timer, Transport::deliveryPayload);
+    }
+
+    /**
+     * @param trucks - Trucks the attempts are spread over
+     * @param executor - Executor the attempts run on
+     * @param timer - Timer scheduling the backoffs and hedges
+     * @param call - A single delivery attempt, e.g. one that sometimes calls deliveryPayload(payload, true)
+     */
+    public ResilientDelivery(List<Transport> trucks, Executor executor, HierarchicalTimerWheel timer, DeliveryCall call) {
+        if(trucks.isEmpty())
+            throw new IllegalArgumentException("At least one truck is needed");
+
+        this.trucks = trucks;
+        this.executor = executor;
+        this.timer = timer;
+        this.call = call;
+        this.next = new AtomicInteger();
+        this.latency = new LatencyHistogram();
+        this.recorded = new AtomicLong();
+        this.attempts = new LongAdder();
+        this.retries = new LongAdder();
+        this.hedges = new LongAdder();
+        this.hedgeWins = new LongAdder();
+        this.maxAttempts = 1;
+        this.hedgeDelayNanos = -1;
+    }
+
+    /**
+     * Retry failed deliveries
+     * The n-th retry waits a random time between half and all of min(maxBackoff, initialBackoff * 2^(n-1))
+     *
+     * @param maxAttempts - Maximum amount of attempts per payload, 1 to never retry
+     * @param initialBackoff - Backoff before the first retry
+     * @param maxBackoff - Upper bound of the backoff
+     * @param unit - Unit of the backoffs
+     */
+    public void setRetry(int maxAttempts, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        if(maxAttempts < 1)
+            throw new IllegalArgumentException("At least one attempt is needed");
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = unit.toNanos(initialBackoff);
+        this.maxBackoffNanos = unit.toNanos(maxBackoff);
+    }
+
+    /**
+     * Hedge attempts that run longer than a latency quantile of the successful deliveries so far
+     *
+     * @param quantile - Latency quantile after which a hedge is started, e.g. 0.95
+     * @param minSamples - Deliveries recorded before hedging starts, so the quantile means something
+     */
+    public void setHedging(double quantile, int minSamples) {
+        if(quantile <= 0 || quantile >= 1)
+            throw new IllegalArgumentException("Quantile must be between 0 and 1");
+
+        this.hedgeQuantile = quantile;
+        this.hedgeMinSamples = Math.max(1, minSamples);
+        refreshHedgeDelay();
+    }
+
+    /**
+     * Deliver the payload, retrying and hedging as configured
+     *
+     * @param payload - Payload to be delivered
+     * @return a future completed with the payload once an attempt succeeded,
+     * or with the failure of the last attempt
+     */
+    public CompletableFuture<Payload> deliver(Payload payload) {
+        CompletableFuture<Payload> result = new CompletableFuture<>();
+        attempt(payload, 1, result);
+        return result;
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * Get the amount of hedges that finished before the attempt they were hedging
+     *
+     * @return winning hedge count
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * Get the time after which an attempt is hedged
+     *
+     * @return hedge delay in nanoseconds, negative while hedging is disabled or warming up
+     */
+    public long getHedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+
+    private void attempt(Payload payload, int attempt, CompletableFuture<Payload> result) {
+        // Cancelled by the caller while backing off
+        if(result.isDone())
+            return;
+
+        CompletableFuture<Payload> current = hedged(payload);
+        // Cancelling the caller's future cancels the attempt in flight
+        result.whenComplete((delivered, throwable) -> current.cancel(true));
+        current.whenComplete((delivered, throwable) -> {
+            if(throwable == null) {
+                result.complete(delivered);
+                return;
+            }
+            Throwable cause = unwrap(throwable);
+            if(attempt >= maxAttempts || cause instanceof CancellationException) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            retries.increment();
+            try {
+                timer.schedule(() -> attempt(payload, attempt + 1, result), System.nanoTime() + backoff(attempt));
+            } catch (IllegalStateException e) {
+                // The timer wheel was closed, no retry can ever run
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    private CompletableFuture<Payload> hedged(Payload payload) {
+        int first = Math.floorMod(next.getAndIncrement(), trucks.size());
+        InterruptibleFuture<Payload> primary = launch(trucks.get(first), payload);
+        long delay = hedgeDelayNanos;
+        if(delay < 0 || trucks.size() < 2)
+            return primary;
+
+        CompletableFuture<Payload> winner = new CompletableFuture<>();
+        // Attempts still running, the last one to fail fails the winner
+        AtomicInteger running = new AtomicInteger(1);
+        // Claimed by the first attempt to succeed, before it completes the winner
+        AtomicBoolean settled = new AtomicBoolean();
+        race(primary, winner, running, settled, null);
+
+        HierarchicalTimerWheel.Timeout timeout;
+        try {
+            timeout = timer.schedule(() -> {
+                if(winner.isDone())
+                    return;
+                running.incrementAndGet();
+                hedges.increment();
+                InterruptibleFuture<Payload> hedge = launch(trucks.get((first + 1) % trucks.size()), payload);
+                race(hedge, winner, running, settled, hedgeWins);
+                winner.whenComplete((result, throwable) -> hedge.cancel(true));
+            }, System.nanoTime() + delay);
+        } catch (IllegalStateException e) {
+            // The timer wheel was closed, the primary runs unhedged
+            timeout = null;
+        }
+        HierarchicalTimerWheel.Timeout scheduled = timeout;
+        winner.whenComplete((result, throwable) -> {
+            if(scheduled != null)
+                scheduled.cancel();
+            primary.cancel(true);
+        });
+        return winner;
+    }
+
+    private static void race(CompletableFuture<Payload> attempt, CompletableFuture<Payload> winner, AtomicInteger running,
+                             AtomicBoolean settled, LongAdder wins) {
+        attempt.whenComplete((result, throwable) -> {
+            if(throwable == null) {
+                if(!settled.compareAndSet(false, true))
+                    return;
+                // Counted before completing, so whoever joins the winner sees the win
+                if(wins != null)
+                    wins.increment();
+                winner.complete(result);
+            } else if(running.decrementAndGet() == 0) {
+                winner.completeExceptionally(unwrap(throwable));
+            }
+        });
+    }
+
+    private InterruptibleFuture<Payload> launch(Transport truck, Payload payload) {
+        return InterruptibleFuture.supplyAsync(() -> {
+            attempts.increment();
+            long start = System.nanoTime();
+            Payload delivered;
+            try {
+                delivered = call.deliver(truck, payload);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            record(System.nanoTime() - start);
+            return delivered;
+        }, executor);
+    }
+
+    // Only successful deliveries are recorded, interrupted losers would skew the quantile
+    private void record(long nanos) {
+        if(hedgeQuantile == 0)
+            return;
+        latency.record(nanos);
+        long count = recorded.incrementAndGet();
+        if(count == hedgeMinSamples || count % REFRESH_INTERVAL == 0)
+            refreshHedgeDelay();
+    }
+
+    private void refreshHedgeDelay() {
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        if(snapshot.getCount() >= hedgeMinSamples)
+            hedgeDelayNanos = snapshot.getValueAtQuantile(hedgeQuantile);
+    }
+
+    private long backoff(int attempt) {
+        int shift = Math.min(attempt - 1, 62);
+        // Compared before shifting so large backoffs cannot overflow
+        long ceiling = initialBackoffNanos > maxBackoffNanos >> shift ? maxBackoffNanos : initialBackoffNanos << shift;
+        if(ceiling <= 1)
+            return ceiling;
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+}
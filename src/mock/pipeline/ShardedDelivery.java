@@ -0,0 +1,288 @@
+package mock.pipeline;
+
+import mock.app.ExecutorStrategy;
+import mock.concurrent.SpscQueue;
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.entity.Transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers payloads with the headquarters split into shards that share no mutable state
+ *
+ * Each shard owns the headquarters whose id falls into it, the payloads leaving those headquarters
+ * and a partition of the trucks, and runs on its own dedicated thread. A shard transports its payloads
+ * and hands each one to the shard owning its destination through a single-producer single-consumer
+ * queue, one per ordered pair of shards, where the receiving shard marks it delivered.
+ * Counters are local to the shard's loop and only published when the run ends, so shards never write
+ * to a shared cache line and the throughput grows with the shard count up to the core count.
+ */
+public class ShardedDelivery implements AutoCloseable {
+    // Sent by a shard on each of its outgoing queues once all its payloads are transported
+    private static final Payload END = new Payload<>("END", null);
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final Shard[] shards;
+    // handoffs[from][to], one producer and one consumer each
+    private final SpscQueue<Payload>[][] handoffs;
+    // First failure of the current run, every shard stops waiting on the others once it is set
+    private volatile Throwable failure;
+
+    /**
+     * @param shardCount - Amount of shards, each running on its own thread
+     * @param trucks - Trucks split between the shards, shards share trucks when there are fewer trucks than shards
+     * @param handoffCapacity - Capacity of the queue between any two shards
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedDelivery(int shardCount, List<Transport> trucks, int handoffCapacity) {
+        if(shardCount < 1 || trucks.isEmpty())
+            throw new IllegalArgumentException("Sharding needs at least one shard and one truck");
+
+        this.shards = new Shard[shardCount];
+        this.handoffs = new SpscQueue[shardCount][shardCount];
+        for(int from = 0; from < shardCount; from++) {
+            for(int to = 0; to < shardCount; to++) {
+                if(from != to)
+                    handoffs[from][to] = new SpscQueue<>(handoffCapacity);
+            }
+        }
+        for(int i = 0; i < shardCount; i++) {
+            List<Transport> owned = new ArrayList<>();
+            for(int t = i; t < trucks.size(); t += shardCount) {
+                owned.add(trucks.get(t));
+            }
+            if(owned.isEmpty())
+                owned.add(trucks.get(i % trucks.size()));
+            shards[i] = new Shard(i, owned.toArray(new Transport[0]), ExecutorStrategy.PINNED.create());
+        }
+    }
+
+    /**
+     * Get the shard owning a headquarters
+     *
+     * @param destination - Headquarters, may be null
+     * @return index of the shard
+     */
+    public int shardOf(Destination destination) {
+        if(destination == null)
+            return 0;
+        int id = destination.getId();
+        return Math.floorMod(id == Destination.UNREGISTERED ? destination.hashCode() : id, shards.length);
+    }
+
+    /**
+     * Split the payloads by the shard of their origin, run every shard and wait for all of them
+     * Only one run may be in progress at a time
+     *
+     * @param payloads - Payloads to deliver
+     * @return amount of payloads delivered
+     * @throws CompletionException if a shard failed, with its failure as the cause
+     */
+    public long deliver(List<Payload> payloads) {
+        failure = null;
+        for(Shard shard : shards) {
+            shard.payloads.clear();
+        }
+        // A failed run may have left payloads and END markers behind, no shard is running to consume them
+        for(SpscQueue<Payload>[] from : handoffs) {
+            for(SpscQueue<Payload> queue : from) {
+                while(queue != null && queue.poll() != null) {
+                }
+            }
+        }
+        for(Payload payload : payloads) {
+            shards[shardOf(payload.getOrigin())].payloads.add(payload);
+        }
+
+        CompletableFuture<?>[] runs = new CompletableFuture<?>[shards.length];
+        for(int i = 0; i < shards.length; i++) {
+            runs[i] = CompletableFuture.runAsync(shards[i]::run, shards[i].executor);
+        }
+        // Joining publishes every shard's counters to the caller
+        CompletableFuture.allOf(runs).exceptionally(throwable -> null).join();
+        Throwable failed = failure;
+        if(failed != null)
+            throw new CompletionException(failed);
+        return getDelivered();
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public long getDelivered() {
+        long delivered = 0;
+        for(Shard shard : shards) {
+            delivered += shard.delivered;
+        }
+        return delivered;
+    }
+
+    public long getFailed() {
+        long failed = 0;
+        for(Shard shard : shards) {
+            failed += shard.failed;
+        }
+        return failed;
+    }
+
+    /**
+     * Get the amount of payloads a shard delivered to its headquarters in the last run
+     *
+     * @param shard - Index of the shard
+     * @return delivered payload count
+     */
+    public long getDelivered(int shard) {
+        return shards[shard].delivered;
+    }
+
+    /**
+     * Get the amount of payloads a shard handed to other shards in the last run
+     *
+     * @param shard - Index of the shard
+     * @return handed off payload count
+     */
+    public long getHandoffs(int shard) {
+        return shards[shard].handedOff;
+    }
+
+    /**
+     * Stop the shards' threads
+     */
+    @Override
+    public void close() {
+        for(Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        for(Shard shard : shards) {
+            try {
+                shard.executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class Shard {
+        private final int index;
+        private final Transport[] trucks;
+        private final ExecutorService executor;
+        private final List<Payload> payloads;
+        // Written by the shard's thread at the end of a run, read after the run is joined
+        private long delivered;
+        private long failed;
+        private long handedOff;
+
+        private Shard(int index, Transport[] trucks, ExecutorService executor) {
+            this.index = index;
+            this.trucks = trucks;
+            this.executor = executor;
+            this.payloads = new ArrayList<>();
+        }
+
+        private void run() {
+            long[] counts = new long[2];
+            long sent = 0;
+            long failures = 0;
+            try {
+                for(int i = 0; i < payloads.size(); i++) {
+                    Payload payload = payloads.get(i);
+                    try {
+                        trucks[i % trucks.length].deliveryPayload(payload);
+                    } catch (RuntimeException e) {
+                        failures++;
+                        continue;
+                    }
+                    int target = shardOf(payload.getDestination());
+                    if(target == index) {
+                        arrive(payload, counts);
+                    } else {
+                        handOff(handoffs[index][target], payload, counts);
+                        sent++;
+                    }
+                    // Keep the inbound queues moving so other shards are not held up by a full queue
+                    if((i & 63) == 0) {
+                        if(failure != null)
+                            break;
+                        drain(counts);
+                    }
+                }
+            } catch (Throwable throwable) {
+                if(failure == null)
+                    failure = throwable;
+                throw throwable;
+            } finally {
+                // Sent however the loop ended, otherwise the other shards would wait for this one forever
+                for(int to = 0; to < shards.length; to++) {
+                    if(to != index)
+                        handOff(handoffs[index][to], END, counts);
+                }
+            }
+
+            int spins = 0;
+            while(counts[1] < shards.length - 1 && failure == null) {
+                if(drain(counts)) {
+                    spins = 0;
+                } else if(++spins < SPINS_BEFORE_YIELD) {
+                    Thread.onSpinWait();
+                } else {
+                    spins = 0;
+                    Thread.yield();
+                }
+            }
+
+            this.delivered = counts[0];
+            this.failed = failures;
+            this.handedOff = sent;
+        }
+
+        // Spins on a full queue, draining this shard's own inbound queues so two shards never wait on each other,
+        // gives up once the run has failed
+        private void handOff(SpscQueue<Payload> queue, Payload payload, long[] counts) {
+            int spins = 0;
+            while(!queue.offer(payload)) {
+                // A failed shard may never drain this queue again
+                if(failure != null)
+                    return;
+                if(drain(counts)) {
+                    spins = 0;
+                } else if(++spins < SPINS_BEFORE_YIELD) {
+                    Thread.onSpinWait();
+                } else {
+                    spins = 0;
+                    Thread.yield();
+                }
+            }
+        }
+
+        // counts[0] is the amount of arrivals, counts[1] the amount of shards that have finished sending
+        private boolean drain(long[] counts) {
+            boolean drained = false;
+            for(int from = 0; from < shards.length; from++) {
+                if(from == index)
+                    continue;
+                SpscQueue<Payload> queue = handoffs[from][index];
+                Payload payload;
+                while((payload = queue.poll()) != null) {
+                    drained = true;
+                    if(payload == END)
+                        counts[1]++;
+                    else
+                        arrive(payload, counts);
+                }
+            }
+            return drained;
+        }
+
+        private void arrive(Payload payload, long[] counts) {
+            payload.setCurrentLocation(payload.getDestination());
+            counts[0]++;
+        }
+    }
+}
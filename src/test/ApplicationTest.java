@@ -0,0 +1,195 @@
+package test;
+
+import mock.app.DeliveryReport;
+import mock.app.ExecutorStrategy;
+import mock.app.PackageDeliveryApplication;
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.TransportLog;
+import mock.pipeline.DestinationGuard;
+import mock.pipeline.RejectionPolicy;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ApplicationTest {
+
+    @AfterClass
+    public static void log() {
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Every package is dispatched onto a truck and ends up at its destination, whichever executor is used
+    public void start() {
+        for(ExecutorStrategy strategy : ExecutorStrategy.values()) {
+            PackageDeliveryApplication app;
+            try {
+                app = new PackageDeliveryApplication(strategy);
+            } catch (UnsupportedOperationException e) {
+                // Virtual threads are not available on this JDK
+                continue;
+            }
+
+            app.setUpHeadquarters(4);
+            app.setUpTrucks(2, 10);
+            app.setUpPackages(100);
+            try {
+                DeliveryReport report = app.start();
+
+                assertEquals(100, report.getDelivered());
+                assertEquals(0, report.getFailed());
+                for(Payload payload : app.getPackages()) {
+                    assertTrue(payload.isDelivered());
+                }
+                // Packages are spread evenly over the four headquarters
+                for(Destination headquarters : app.getHeadquarters()) {
+                    assertEquals(25, app.getDelivered(headquarters));
+                }
+            } finally {
+                app.shutdown();
+            }
+        }
+    }
+
+    @Test
+    // Blocking deliveries run on their own executor, so they overlap instead of queueing behind the CPU pool
+    public void blockingExecutor() {
+        PackageDeliveryApplication app = new PackageDeliveryApplication(ExecutorStrategy.FIXED);
+        try {
+            app.setUpBlockingExecutor(ExecutorStrategy.VIRTUAL);
+        } catch (UnsupportedOperationException e) {
+            // Virtual threads are not available on this JDK
+            app.setUpBlockingExecutor(ExecutorStrategy.CACHED);
+        }
+        app.setUpHeadquarters(4);
+        AtomicInteger pausing = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        for(int i = 0; i < 4; i++) {
+            app.getTrucks().add(new Transport(10, TransportLog.NONE, 50, TimeUnit.MILLISECONDS) {
+                @Override
+                public Payload deliveryPayload(Payload payload) {
+                    peak.accumulateAndGet(pausing.incrementAndGet(), Math::max);
+                    try {
+                        return super.deliveryPayload(payload);
+                    } finally {
+                        pausing.decrementAndGet();
+                    }
+                }
+            });
+        }
+        app.setUpPackages(200);
+        app.setUpPipeline(200, 0, RejectionPolicy.BLOCK);
+        try {
+            DeliveryReport report = app.start();
+
+            assertEquals(200, report.getDelivered());
+            // The CPU pool has one thread per core, more pauses at once can only come from the blocking executor
+            int cores = Runtime.getRuntime().availableProcessors();
+            assertTrue(String.valueOf(peak.get()), peak.get() > cores);
+            // 200 sequential 50ms pauses would take 10 seconds, overlapped they take little more than one
+            assertTrue(report.getElapsedNanos() < TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            app.shutdown();
+        }
+    }
+
+    @Test
+    // A failing headquarters has its circuit opened, its packages fail fast and the others are still delivered
+    public void isolation() {
+        PackageDeliveryApplication app = new PackageDeliveryApplication(ExecutorStrategy.FIXED);
+        app.setUpHeadquarters(4);
+        Destination down = app.getHeadquarters().get(1);
+        AtomicInteger attemptsOnDown = new AtomicInteger();
+        for(int i = 0; i < 2; i++) {
+            app.getTrucks().add(new Transport(false, 10) {
+                @Override
+                public Payload deliveryPayload(Payload payload) {
+                    if(payload.getDestination() != down)
+                        return super.deliveryPayload(payload);
+                    attemptsOnDown.incrementAndGet();
+                    try {
+                        transportPayload(payload, true);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                    return payload;
+                }
+            });
+        }
+        app.setUpPackages(400);
+        app.setUpPipeline(16, 16, RejectionPolicy.BLOCK);
+        // The bulkhead covers the whole window, so only the circuit rejects packages here
+        app.setUpIsolation(5, 10, TimeUnit.SECONDS, 32);
+        try {
+            DeliveryReport report = app.start();
+
+            assertEquals(300, report.getDelivered());
+            assertEquals(100, report.getFailed());
+            assertEquals(0, app.getDelivered(down));
+            assertTrue(app.getGuard().isOpen(down.getId()));
+            // Only the threshold and the deliveries already live when the circuit opened reached the truck
+            assertTrue(attemptsOnDown.get() <= 5 + 32);
+            assertEquals(100 - attemptsOnDown.get(), app.getGuard().getRejectedOpen());
+            assertEquals(0, app.getGuard().getRejectedFull());
+        } finally {
+            app.shutdown();
+        }
+    }
+
+    @Test
+    // Packages the full pipeline rejects give their bulkhead slot back without opening a circuit
+    public void rejectedByPipeline() {
+        PackageDeliveryApplication app = new PackageDeliveryApplication(ExecutorStrategy.FIXED);
+        app.setUpHeadquarters(4);
+        app.setUpTrucks(2, 10, 20, TimeUnit.MILLISECONDS);
+        app.setUpPackages(40);
+        app.setUpPipeline(1, 1, RejectionPolicy.FAIL);
+        app.setUpIsolation(1, 10, TimeUnit.SECONDS, 40);
+        try {
+            DeliveryReport report = app.start();
+
+            assertTrue(report.getFailed() > 0);
+            assertEquals(40, report.getDelivered() + report.getFailed());
+            assertEquals(0, app.getGuard().getRejectedOpen());
+            for(Destination headquarters : app.getHeadquarters()) {
+                assertFalse(app.getGuard().isOpen(headquarters.getId()));
+                assertEquals(0, app.getGuard().getInFlight(headquarters.getId()));
+            }
+        } finally {
+            app.shutdown();
+        }
+    }
+
+    @Test
+    // The bulkhead caps live deliveries per headquarters and a successful probe closes an open circuit
+    public void guard() throws InterruptedException {
+        DestinationGuard guard = new DestinationGuard(2, 1, 10, TimeUnit.MILLISECONDS, 2);
+
+        assertTrue(guard.tryAcquire(0));
+        assertTrue(guard.tryAcquire(0));
+        assertFalse(guard.tryAcquire(0));
+        assertTrue(guard.tryAcquire(1));
+        guard.onSuccess(0);
+        guard.onFailure(0);
+        guard.onSuccess(1);
+
+        assertTrue(guard.isOpen(0));
+        assertFalse(guard.tryAcquire(0));
+        Thread.sleep(20);
+        // A single probe is let through once the open duration has passed
+        assertTrue(guard.tryAcquire(0));
+        assertFalse(guard.tryAcquire(0));
+        guard.onSuccess(0);
+        assertFalse(guard.isOpen(0));
+        assertTrue(guard.tryAcquire(0));
+        assertEquals(1, guard.getRejectedFull());
+        assertEquals(2, guard.getRejectedOpen());
+    }
+}
@@ -0,0 +1,78 @@
+package test;
+
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.pipeline.DeliveryBatcher;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class BatchingTest {
+
+    private static Transport transportSmall;
+    private static ExecutorService executor;
+    private static HierarchicalTimerWheel timer;
+
+    @BeforeClass
+    public static void setUp() {
+        transportSmall = new Transport(false, 10);
+        executor = Executors.newFixedThreadPool(2);
+        timer = new HierarchicalTimerWheel(executor);
+    }
+
+    @AfterClass
+    public static void log() {
+        timer.close();
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Every payload's future is completed from the task of its batch
+    public void submit() {
+        DeliveryBatcher batcher = new DeliveryBatcher(transportSmall, executor, null, 8, 0, TimeUnit.MILLISECONDS);
+        List<CompletableFuture<Payload>> futures = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            futures.add(batcher.submit(new Payload<>("Package-" + i, i)));
+        }
+
+        // Two full batches have been dispatched, the last four wait for the flush
+        assertFalse(futures.get(19).isDone());
+        batcher.flush();
+
+        for(int i = 0; i < 20; i++) {
+            assertEquals("Package-" + i, futures.get(i).join().getName());
+        }
+    }
+
+    @Test
+    // A partial batch is dispatched on its own once the linger time has passed
+    public void linger() throws Exception {
+        DeliveryBatcher batcher = new DeliveryBatcher(transportSmall, executor, timer, 1_000, 10, TimeUnit.MILLISECONDS);
+        Payload<Integer> payload = new Payload<>("Lingering", 1);
+
+        assertEquals(payload, batcher.submit(payload).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    // One future is returned per batch
+    public void deliverBatches() {
+        DeliveryBatcher batcher = new DeliveryBatcher(transportSmall, executor, null, 4, 0, TimeUnit.MILLISECONDS);
+        List<Payload> payloads = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            payloads.add(new Payload<>("Package-" + i, i));
+        }
+
+        List<CompletableFuture<List<Payload>>> batches = batcher.deliverBatches(payloads);
+
+        assertEquals(3, batches.size());
+        assertEquals(2, batches.get(2).join().size());
+    }
+}
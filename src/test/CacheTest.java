@@ -0,0 +1,153 @@
+package test;
+
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.TransportLog;
+import mock.pipeline.DeliveryCache;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CacheTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void log() {
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    private static Transport counting(AtomicInteger deliveries, long pauseMillis) {
+        return new Transport(10, TransportLog.NONE, pauseMillis, TimeUnit.MILLISECONDS) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                deliveries.incrementAndGet();
+                return super.deliveryPayload(payload);
+            }
+        };
+    }
+
+    @Test
+    // Repeated and concurrent deliveries of the same payload share one transport
+    public void hit() {
+        AtomicInteger deliveries = new AtomicInteger();
+        DeliveryCache cache = new DeliveryCache(counting(deliveries, 50), executor, 16, 1, TimeUnit.MINUTES);
+        Payload<Integer> payload = new Payload<>("Default", 10, new Destination("HQ-0"), new Destination("HQ-1"));
+
+        CompletableFuture<Payload> first = cache.deliver(payload);
+        CompletableFuture<Payload> second = cache.deliver(payload);
+        assertEquals(payload, first.join());
+        assertEquals(payload, second.join());
+        assertEquals(payload, cache.deliveryPayload(payload));
+
+        assertEquals(1, deliveries.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    // The same name to another destination is a different delivery
+    public void key() {
+        AtomicInteger deliveries = new AtomicInteger();
+        DeliveryCache cache = new DeliveryCache(counting(deliveries, 0), executor, 16, 1, TimeUnit.MINUTES);
+
+        cache.deliveryPayload(new Payload<>("Default", 10, null, new Destination("HQ-1")));
+        cache.deliveryPayload(new Payload<>("Default", 10, null, new Destination("HQ-2")));
+        cache.deliveryPayload(new Payload<>("Default", 10, null, new Destination("HQ-1")));
+
+        assertEquals(2, deliveries.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    // Oldest entries are evicted beyond the max size and entries expire after their time to live
+    public void eviction() throws InterruptedException {
+        AtomicInteger deliveries = new AtomicInteger();
+        DeliveryCache sized = new DeliveryCache(counting(deliveries, 0), executor, 2, 1, TimeUnit.MINUTES);
+        for(int i = 0; i < 5; i++) {
+            sized.deliveryPayload(new Payload<>("Package-" + i, i));
+        }
+        assertEquals(2, sized.size());
+        assertEquals(3, sized.getEvictions());
+
+        DeliveryCache timed = new DeliveryCache(counting(deliveries, 0), executor, 16, 10, TimeUnit.MILLISECONDS);
+        Payload<Integer> payload = new Payload<>("Default", 10);
+        timed.deliveryPayload(payload);
+        Thread.sleep(20);
+        timed.deliveryPayload(payload);
+        assertEquals(2, timed.getMisses());
+        assertEquals(1, timed.getEvictions());
+    }
+
+    @Test
+    // Running deliveries are never evicted, requests made while they run keep sharing them
+    public void running() {
+        AtomicInteger deliveries = new AtomicInteger();
+        DeliveryCache cache = new DeliveryCache(counting(deliveries, 100), executor, 2, 1, TimeUnit.MINUTES);
+        CompletableFuture<?>[] running = new CompletableFuture<?>[4];
+        for(int i = 0; i < running.length; i++) {
+            running[i] = cache.deliver(new Payload<>("Package-" + i, i));
+        }
+        assertEquals(4, cache.size());
+        assertEquals(0, cache.getEvictions());
+        cache.deliver(new Payload<>("Package-0", 0));
+        assertEquals(1, cache.getHits());
+        CompletableFuture.allOf(running).join();
+        assertEquals(4, deliveries.get());
+
+        // Once they completed, the next miss trims the cache back to its size
+        cache.deliveryPayload(new Payload<>("Package-4", 4));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getEvictions());
+    }
+
+    @Test
+    // A caller completing or cancelling its future leaves the other callers and the cached delivery untouched
+    public void isolated() {
+        AtomicInteger deliveries = new AtomicInteger();
+        DeliveryCache cache = new DeliveryCache(counting(deliveries, 50), executor, 16, 1, TimeUnit.MINUTES);
+        Payload<Integer> payload = new Payload<>("Default", 10);
+
+        CompletableFuture<Payload> cancelled = cache.deliver(payload);
+        CompletableFuture<Payload> obtruded = cache.deliver(payload);
+        CompletableFuture<Payload> waiting = cache.deliver(payload);
+        cancelled.cancel(true);
+        obtruded.obtrudeValue(null);
+
+        assertEquals(payload, waiting.join());
+        assertEquals(payload, cache.deliveryPayload(payload));
+        assertEquals(1, deliveries.get());
+    }
+
+    @Test
+    // A failed delivery is not cached
+    public void failure() {
+        AtomicInteger attempts = new AtomicInteger();
+        Transport transport = new Transport(false, 10) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                if(attempts.incrementAndGet() == 1)
+                    throw new IllegalStateException("Truck broke down");
+                return super.deliveryPayload(payload);
+            }
+        };
+        DeliveryCache cache = new DeliveryCache(transport, executor, 16, 1, TimeUnit.MINUTES);
+        Payload<Integer> payload = new Payload<>("Default", 10);
+
+        assertTrue(cache.deliver(payload).handle((result, throwable) -> throwable).join() instanceof IllegalStateException);
+        assertEquals(payload, cache.deliveryPayload(payload));
+        assertEquals(2, cache.getMisses());
+    }
+}
@@ -0,0 +1,158 @@
+package test;
+
+import mock.concurrent.InterruptibleFuture;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.*;
+
+public class CancellationTest {
+
+    private static Payload<String> defaultStringPayload;
+    private static Payload<Integer> defaultIntPayload;
+    private static Transport transportSmall;
+    private static Transport transportExtraLarge;
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp() {
+        defaultStringPayload = new Payload<>("Default", "I am the default String payload");
+        defaultIntPayload = new Payload<>("Default", 10);
+        transportSmall = new Transport(false, 10);
+        transportExtraLarge = new Transport(false, 1_000_000_000);
+    }
+
+    @AfterClass
+    public static void log() {
+        System.out.println("*************************************************");
+    }
+
+    @Before
+    // A single worker, so a later delivery can only finish if the cancelled one released it
+    public void createExecutor() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    // Cancelling interrupts the running transport loop and frees the worker right away
+    public void cancelTransport() throws Exception {
+        InterruptibleFuture<Payload> completableFuture = transportExtraLarge.deliverAsync(defaultStringPayload, executor);
+        Thread.sleep(10);
+
+        assertTrue(completableFuture.cancel(true));
+        assertTrue(completableFuture.isCancelled());
+        assertThrows(CancellationException.class, completableFuture::get);
+
+        // The worker is free again
+        assertEquals(defaultIntPayload, transportSmall.deliverAsync(defaultIntPayload, executor).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    // Cancelling interrupts a sleeping transport as well
+    public void cancelSleep() throws Exception {
+        InterruptibleFuture<Payload> completableFuture = InterruptibleFuture.supplyAsync(() -> transportSmall.sleep(defaultStringPayload), executor);
+        Thread.sleep(10);
+        completableFuture.cancel(true);
+
+        assertEquals(defaultIntPayload, transportSmall.deliverAsync(defaultIntPayload, executor).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    // Cancelling a dependent stage cancels the delivery it was built on
+    public void cancelDependent() throws Exception {
+        InterruptibleFuture<Payload> delivery = transportExtraLarge.deliverAsync(defaultStringPayload, executor);
+        CompletableFuture<Payload> bundled = delivery.thenApply(payload -> {
+            payload.addBundle(defaultIntPayload);
+            return payload;
+        });
+        Thread.sleep(10);
+
+        bundled.cancel(true);
+
+        assertTrue(delivery.isCancelled());
+        assertEquals(defaultIntPayload, transportSmall.deliverAsync(defaultIntPayload, executor).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    // Cancelling a combined stage cancels both deliveries it combines
+    public void cancelCombined() {
+        InterruptibleFuture<Payload> first = transportExtraLarge.deliverAsync(defaultIntPayload, executor);
+        InterruptibleFuture<Payload> second = transportExtraLarge.deliverAsync(defaultStringPayload, executor);
+        CompletableFuture<Payload> combined = first.thenCombine(second, (s1, s2) -> s1);
+
+        combined.cancel(true);
+
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    // Cancelling one of two stages built on the same delivery leaves the delivery and the other stage running
+    public void cancelSibling() throws Exception {
+        InterruptibleFuture<Payload> delivery = InterruptibleFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return defaultIntPayload;
+        }, executor);
+        CompletableFuture<String> named = delivery.thenApply(Payload::getName);
+        CompletableFuture<Object> contents = delivery.thenApply(Payload::getContents);
+
+        named.cancel(true);
+
+        assertFalse(delivery.isCancelled());
+        assertEquals(10, contents.get(5, TimeUnit.SECONDS));
+        // Once the last branch is cancelled as well, the delivery has nobody left and is cancelled
+        InterruptibleFuture<Payload> shared = transportExtraLarge.deliverAsync(defaultStringPayload, executor);
+        CompletableFuture<Payload> first = shared.thenApply(payload -> payload);
+        CompletableFuture<Payload> second = shared.thenApply(payload -> payload);
+        first.cancel(true);
+        assertFalse(shared.isCancelled());
+        second.cancel(true);
+        assertTrue(shared.isCancelled());
+    }
+
+    @Test
+    // The two-stage methods besides thenCombine cancel both of their inputs too
+    public void cancelBoth() {
+        InterruptibleFuture<Payload> first = transportExtraLarge.deliverAsync(defaultIntPayload, executor);
+        InterruptibleFuture<Payload> second = transportExtraLarge.deliverAsync(defaultStringPayload, executor);
+        first.thenAcceptBoth(second, (s1, s2) -> { }).cancel(true);
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+
+        InterruptibleFuture<Payload> third = transportExtraLarge.deliverAsync(defaultIntPayload, executor);
+        InterruptibleFuture<Payload> fourth = transportExtraLarge.deliverAsync(defaultStringPayload, executor);
+        third.applyToEither(fourth, payload -> payload).cancel(true);
+        assertTrue(third.isCancelled());
+        assertTrue(fourth.isCancelled());
+    }
+
+    @Test
+    // Cancelling the delivery completes the stages after it exceptionally with the CancellationException as cause
+    public void cancelDownstream() {
+        InterruptibleFuture<Payload> delivery = transportExtraLarge.deliverAsync(defaultStringPayload, executor);
+        CompletableFuture<Payload> handled = delivery.thenApply(payload -> payload);
+
+        delivery.cancel(true);
+
+        assertTrue(handled.isCompletedExceptionally());
+        CompletionException exception = assertThrows(CompletionException.class, handled::join);
+        assertTrue(exception.getCause() instanceof CancellationException);
+    }
+}
@@ -0,0 +1,124 @@
+package test;
+
+import mock.concurrent.Combinators;
+import mock.concurrent.InterruptibleFuture;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+public class CombinatorTest {
+
+    private static Transport transportSmall;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp() {
+        transportSmall = new Transport(false, 10);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void log() {
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    private static List<CompletableFuture<Payload>> deliveries(int amount) {
+        List<CompletableFuture<Payload>> futures = new ArrayList<>();
+        for(int i = 0; i < amount; i++) {
+            futures.add(transportSmall.deliverAsync(new Payload<>("Package-" + i, i), executor));
+        }
+        return futures;
+    }
+
+    private static InterruptibleFuture<Payload> hanging() {
+        return InterruptibleFuture.supplyAsync(() -> transportSmall.sleep(new Payload<>("Hanging", 0)), executor);
+    }
+
+    private static int count(Payload<?> payload) {
+        int count = 1;
+        for(Payload bundled : payload.getBundle()) {
+            count += count(bundled);
+        }
+        return count;
+    }
+
+    @Test
+    // Every result is collected in order
+    public void allOf() {
+        Combinators.Gather<Payload> all = Combinators.allOf(deliveries(5_000));
+        List<Payload> results = all.join();
+
+        assertEquals(5_000, results.size());
+        assertEquals(5_000, all.getCompleted());
+        for(int i = 0; i < results.size(); i++) {
+            assertEquals("Package-" + i, results.get(i).getName());
+        }
+    }
+
+    @Test
+    // The first failure fails the combination at once and the futures still running are cancelled
+    public void shortCircuit() {
+        List<CompletableFuture<Payload>> futures = deliveries(10);
+        InterruptibleFuture<Payload> hanging = hanging();
+        futures.add(hanging);
+        futures.add(CompletableFuture.failedFuture(new IllegalStateException("Truck broke down")));
+
+        Throwable failure = Combinators.allOf(futures).handle((result, throwable) -> throwable).join();
+        assertTrue(failure instanceof IllegalStateException);
+        assertTrue(hanging.isCancelled());
+    }
+
+    @Test
+    // anyN completes with the first successes and tolerates failures while n is still reachable
+    public void anyN() {
+        List<CompletableFuture<Payload>> futures = deliveries(5);
+        InterruptibleFuture<Payload> hanging = hanging();
+        futures.add(hanging);
+        futures.add(CompletableFuture.failedFuture(new IllegalStateException("Truck broke down")));
+
+        assertEquals(5, Combinators.anyN(futures, 5).join().size());
+        assertTrue(hanging.isCancelled());
+
+        List<CompletableFuture<Payload>> failing = new ArrayList<>();
+        failing.add(CompletableFuture.failedFuture(new IllegalStateException("First")));
+        failing.add(hanging());
+        failing.add(CompletableFuture.failedFuture(new IllegalStateException("Second")));
+        assertTrue(Combinators.anyN(failing, 2).handle((result, throwable) -> throwable).join() instanceof IllegalStateException);
+    }
+
+    @Test
+    // The first success wins even if other futures failed first
+    public void firstSuccessful() {
+        List<CompletableFuture<Payload>> futures = new ArrayList<>();
+        futures.add(CompletableFuture.failedFuture(new IllegalStateException("Truck broke down")));
+        futures.add(hanging());
+        futures.addAll(deliveries(1));
+
+        assertEquals("Package-0", Combinators.firstSuccessful(futures).join().getName());
+        assertTrue(Combinators.firstSuccessful(new ArrayList<CompletableFuture<Payload>>())
+                .handle((result, throwable) -> throwable).join() instanceof NoSuchElementException);
+    }
+
+    @Test
+    // Delivered payloads are merged into one bundle tree holding every payload
+    public void reduce() {
+        Payload<Integer> empty = new Payload<>("Empty", 0);
+        Payload merged = Combinators.reduce(deliveries(1_000), empty, (first, second) -> {
+            first.addBundle(second);
+            return first;
+        }, executor).join();
+
+        assertEquals(1_000, count(merged));
+        assertSame(empty, Combinators.reduce(new ArrayList<CompletableFuture<Payload>>(), empty, (first, second) -> first, executor).join());
+    }
+}
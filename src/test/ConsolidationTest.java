@@ -0,0 +1,99 @@
+package test;
+
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.TransportLog;
+import mock.pipeline.ConsolidationStage;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConsolidationTest {
+
+    private static ExecutorService executor;
+    private static DestinationRegistry registry;
+    private static HierarchicalTimerWheel timer;
+
+    @BeforeClass
+    public static void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        registry = new DestinationRegistry(8);
+        timer = new HierarchicalTimerWheel(executor);
+    }
+
+    @AfterClass
+    public static void log() {
+        timer.close();
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Payloads are bundled per destination and each full bundle costs a single transport call
+    public void submit() {
+        AtomicInteger calls = new AtomicInteger();
+        Transport transport = new Transport(10, TransportLog.NONE) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                calls.incrementAndGet();
+                return super.deliveryPayload(payload);
+            }
+        };
+        Destination origin = registry.intern("HQ-0");
+        Destination first = registry.intern("HQ-1");
+        Destination second = registry.intern("HQ-2");
+        ConsolidationStage stage = new ConsolidationStage(transport, executor, null, 5, 0, TimeUnit.MILLISECONDS);
+
+        List<CompletableFuture<Payload>> futures = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            futures.add(stage.submit(new Payload<>("Package-" + i, i, origin, i % 2 == 0 ? first : second)));
+        }
+
+        for(int i = 0; i < 20; i++) {
+            Payload payload = futures.get(i).join();
+            assertEquals("Package-" + i, payload.getName());
+            assertTrue(payload.isDelivered());
+        }
+        assertEquals(4, calls.get());
+        assertEquals(4, stage.getBundles());
+        assertEquals(20, stage.getConsolidated());
+    }
+
+    @Test
+    // A bundle that does not fill up is delivered once its first payload has waited long enough
+    public void maxWait() throws Exception {
+        ConsolidationStage stage = new ConsolidationStage(new Transport(false, 10), executor, timer, 1_000, 10, TimeUnit.MILLISECONDS);
+        Payload<Integer> payload = new Payload<>("Waiting", 1, registry.intern("HQ-0"), registry.intern("HQ-3"));
+
+        assertEquals(payload, stage.submit(payload).get(5, TimeUnit.SECONDS));
+        assertEquals(1, stage.getBundles());
+    }
+
+    @Test
+    // A failed bundle fails the future of every payload in it
+    public void failure() {
+        Transport transport = new Transport(false, 10) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                throw new IllegalStateException("Truck broke down");
+            }
+        };
+        ConsolidationStage stage = new ConsolidationStage(transport, executor, null, 10, 0, TimeUnit.MILLISECONDS);
+        CompletableFuture<Payload> first = stage.submit(new Payload<>("First", 1, registry.intern("HQ-0"), registry.intern("HQ-1")));
+        CompletableFuture<Payload> second = stage.submit(new Payload<>("Second", 2, registry.intern("HQ-0"), registry.intern("HQ-1")));
+        stage.close();
+
+        assertTrue(first.handle((result, throwable) -> throwable).join() instanceof IllegalStateException);
+        assertTrue(second.handle((result, throwable) -> throwable).join() instanceof IllegalStateException);
+    }
+}
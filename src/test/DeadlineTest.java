@@ -0,0 +1,240 @@
+package test;
+
+import mock.app.DeliveryReport;
+import mock.app.ExecutorStrategy;
+import mock.app.PackageDeliveryApplication;
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.pipeline.BoundedDeliveryStage;
+import mock.pipeline.RejectionPolicy;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+public class DeadlineTest {
+
+    private static Payload<String> defaultStringPayload;
+    private static Payload<Integer> defaultIntPayload;
+    private static Transport transportSmall;
+    private static Transport transportSleeping;
+    private static HierarchicalTimerWheel timer;
+
+    @BeforeClass
+    public static void setUp() {
+        defaultStringPayload = new Payload<>("Default", "I am the default String payload");
+        defaultIntPayload = new Payload<>("Default", 10);
+        transportSmall = new Transport(false, 10);
+        // Hangs like Transport.sleep on every delivery
+        transportSleeping = new Transport(false, 10) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                return sleep(payload);
+            }
+        };
+        timer = new HierarchicalTimerWheel(Runnable::run);
+    }
+
+    @AfterClass
+    public static void log() {
+        timer.close();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // The shared timer completes the future with the fallback once its deadline passes
+    public void completeOnDeadline() throws Exception {
+        CompletableFuture<Payload> completableFuture = CompletableFuture.supplyAsync(() -> transportSleeping.deliveryPayload(defaultStringPayload));
+        timer.completeOnDeadline(completableFuture, defaultIntPayload, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(defaultIntPayload, completableFuture.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    // Deadlines beyond the lowest wheel cascade down and still fire, cancelled ones never do
+    public void cascade() throws Exception {
+        long start = System.nanoTime();
+        CompletableFuture<Long> far = new CompletableFuture<>();
+        CompletableFuture<Long> cancelled = new CompletableFuture<>();
+        timer.schedule(() -> far.complete(System.nanoTime()), start + TimeUnit.MILLISECONDS.toNanos(150));
+        timer.schedule(() -> cancelled.complete(System.nanoTime()), start + TimeUnit.MILLISECONDS.toNanos(100)).cancel();
+
+        long fired = far.get(5, TimeUnit.SECONDS);
+        assertTrue(fired - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertFalse(cancelled.isDone());
+    }
+
+    @Test
+    // A delivery that misses its deadline completes with the fallback and frees its worker for the next payload
+    public void missedDeadline() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BoundedDeliveryStage stage = new BoundedDeliveryStage(executor, 1, 10, RejectionPolicy.BLOCK, timer, payload -> null);
+            Payload<String> hanging = new Payload<>("Hanging", "contents");
+            hanging.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20));
+
+            CompletableFuture<Payload> missed = stage.submit(transportSleeping, hanging);
+            CompletableFuture<Payload> next = stage.submit(transportSmall, defaultIntPayload);
+
+            assertNull(missed.get(5, TimeUnit.SECONDS));
+            // Only one worker exists, so it must have been freed from the hanging delivery
+            assertEquals(defaultIntPayload, next.get(5, TimeUnit.SECONDS));
+            assertEquals(1, stage.getMissed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    // Queued payloads are started earliest deadline first
+    public void earliestDeadlineFirst() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Transport recording = new Transport(false, 10) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                order.add(payload.getName());
+                return payload;
+            }
+        };
+        try {
+            BoundedDeliveryStage stage = new BoundedDeliveryStage(executor, 1, 10, RejectionPolicy.BLOCK, timer, payload -> null);
+            long now = System.nanoTime();
+            stage.submit(recording, new Payload<>("Blocking", 0));
+            String[] names = {"Late", "Early", "Middle"};
+            long[] deadlines = {60, 20, 40};
+            for(int i = 0; i < names.length; i++) {
+                Payload<Integer> payload = new Payload<>(names[i], i);
+                payload.setDeadline(now + TimeUnit.SECONDS.toNanos(deadlines[i]));
+                stage.submit(recording, payload);
+            }
+
+            gate.countDown();
+            stage.awaitIdle();
+
+            assertEquals(List.of("Blocking", "Early", "Middle", "Late"), order);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    // A payload expiring while queued leaves the queue, and changing its deadline does not reorder the others
+    public void expiredWhileQueued() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Transport recording = new Transport(false, 10) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                order.add(payload.getName());
+                return payload;
+            }
+        };
+        try {
+            BoundedDeliveryStage stage = new BoundedDeliveryStage(executor, 1, 4, RejectionPolicy.FAIL, timer, payload -> null);
+            long now = System.nanoTime();
+            stage.submit(recording, new Payload<>("Blocking", 0));
+            String[] names = {"Late", "Early", "Middle"};
+            long[] deadlines = {60, 20, 40};
+            for(int i = 0; i < names.length; i++) {
+                Payload<Integer> payload = new Payload<>(names[i], i);
+                payload.setDeadline(now + TimeUnit.SECONDS.toNanos(deadlines[i]));
+                stage.submit(recording, payload);
+                // Clearing a queued payload's deadline, like the application does once a run is over
+                if(names[i].equals("Middle"))
+                    payload.setDeadline(Payload.NO_DEADLINE);
+            }
+            Payload<Integer> expiring = new Payload<>("Expiring", 3);
+            expiring.setDeadline(now + TimeUnit.MILLISECONDS.toNanos(20));
+            CompletableFuture<Payload> expired = stage.submit(recording, expiring);
+            expired.whenComplete((result, throwable) -> expiring.setDeadline(Payload.NO_DEADLINE));
+            assertNull(expired.get(5, TimeUnit.SECONDS));
+
+            // The expired payload gave back its place, so the full stage admits one more
+            Payload<Integer> last = new Payload<>("Last", 4);
+            last.setDeadline(now + TimeUnit.SECONDS.toNanos(80));
+            assertFalse(stage.submit(recording, last).isCompletedExceptionally());
+
+            gate.countDown();
+            stage.awaitIdle();
+
+            assertEquals(List.of("Blocking", "Early", "Middle", "Late", "Last"), order);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    // A closed timer fails the submit instead of keeping its admission permit
+    public void closedTimer() throws Exception {
+        HierarchicalTimerWheel closed = new HierarchicalTimerWheel(Runnable::run);
+        closed.close();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BoundedDeliveryStage stage = new BoundedDeliveryStage(executor, 1, 0, RejectionPolicy.BLOCK, closed, payload -> null);
+            Payload<Integer> payload = new Payload<>("Timed", 0);
+            payload.setDeadline(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+
+            CompletableFuture<Payload> future = stage.submit(transportSmall, payload);
+            assertTrue(future.isCompletedExceptionally());
+            assertEquals(0, stage.getAdmitted());
+            stage.awaitIdle();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    // Closing the wheel cancels what is still pending instead of leaving it incomplete forever
+    public void close() {
+        HierarchicalTimerWheel closing = new HierarchicalTimerWheel(Runnable::run);
+        CompletableFuture<Payload> pending = closing.completeOnDeadline(new CompletableFuture<>(), defaultIntPayload,
+                System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        HierarchicalTimerWheel.Timeout timeout = closing.schedule(() -> { }, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        closing.close();
+
+        assertTrue(pending.isCancelled());
+        assertTrue(timeout.isCancelled());
+        assertThrows(IllegalStateException.class, () -> closing.schedule(() -> { }, System.nanoTime()));
+    }
+
+    @Test
+    // Every run gives the packages a fresh budget instead of keeping the deadlines of the previous run
+    public void budgetPerRun() throws InterruptedException {
+        PackageDeliveryApplication app = new PackageDeliveryApplication(ExecutorStrategy.FIXED);
+        app.setUpHeadquarters(4);
+        app.setUpTrucks(2, 10);
+        app.setUpPackages(20);
+        app.setUpDeadlines(200, TimeUnit.MILLISECONDS);
+        try {
+            assertEquals(20, app.start().getDelivered());
+            Thread.sleep(250);
+            DeliveryReport second = app.start();
+            assertEquals(20, second.getDelivered());
+            assertEquals(0, second.getMissed());
+            for(Payload payload : app.getPackages()) {
+                assertFalse(payload.hasDeadline());
+            }
+        } finally {
+            app.shutdown();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package test;
+
+import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
+import mock.entity.Payload;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DestinationTest {
+
+    @AfterClass
+    public static void log() {
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Every name is interned once and given the next dense id
+    public void intern() {
+        DestinationRegistry registry = new DestinationRegistry(4);
+        Destination first = registry.intern("HQ-0");
+        Destination second = registry.intern("HQ-1");
+
+        assertSame(first, registry.intern("HQ-0"));
+        assertEquals(0, first.getId());
+        assertEquals(1, second.getId());
+        assertSame(second, registry.get(1));
+        assertNull(registry.get(2));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    // A full registry refuses new names but still resolves known ones
+    public void capacity() {
+        DestinationRegistry registry = new DestinationRegistry(1);
+        registry.intern("HQ-0");
+
+        assertThrows(IllegalStateException.class, () -> registry.intern("HQ-1"));
+        assertEquals(0, registry.intern("HQ-0").getId());
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    // Delivery checks compare ids within a registry and names otherwise
+    public void isDelivered() {
+        DestinationRegistry registry = new DestinationRegistry();
+        Payload<Integer> payload = new Payload<>("Default", 10, registry.intern("HQ-0"), registry.intern("HQ-1"));
+
+        payload.setCurrentLocation(registry.intern("HQ-0"));
+        assertFalse(payload.isDelivered());
+        payload.setCurrentLocation(registry.intern("HQ-1"));
+        assertTrue(payload.isDelivered());
+        payload.setCurrentLocation(new Destination("HQ-1"));
+        assertTrue(payload.isDelivered());
+    }
+
+    @Test
+    // Destinations of different registries are equal by name, whatever their ids, and hash alike when equal
+    public void equality() {
+        DestinationRegistry first = new DestinationRegistry(4);
+        DestinationRegistry second = new DestinationRegistry(4);
+        Destination a = first.intern("X");
+        second.intern("Y");
+        Destination b = second.intern("X");
+        Destination y = second.intern("Y");
+        Destination loose = new Destination("X");
+
+        assertEquals(0, a.getId());
+        assertEquals(1, b.getId());
+        assertEquals(a, b);
+        assertEquals(a, loose);
+        assertEquals(loose, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        // Same id, different names
+        assertEquals(a.getId(), y.getId());
+        assertFalse(a.equals(y));
+    }
+}
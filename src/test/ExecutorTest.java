@@ -1,4 +1,117 @@
 package test;
 
+import mock.app.ExecutorStrategy;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.*;
+
 public class ExecutorTest {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int WARMUP_ROUNDS = 2;
+
+    private static Payload<Integer>[] payloads;
+    private static Transport transportMedium;
+
+    @BeforeClass
+    @SuppressWarnings("unchecked")
+    public static void setUp() {
+        payloads = new Payload[BATCH_SIZE];
+        for(int i = 0; i < BATCH_SIZE; i++) {
+            payloads[i] = new Payload<>("Package-" + i, i);
+        }
+        transportMedium = new Transport(false, 1_000);
+    }
+
+    @AfterClass
+    public static void log() {
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Runs the same batch of deliveries on every executor strategy and reports
+    // throughput, completion latency percentiles and the amount of threads used
+    public void compareExecutors() {
+        System.out.println(String.format("%-20s %12s %10s %10s %10s %8s", "Strategy", "ops/s", "p50 us", "p99 us", "p999 us", "threads"));
+        for(ExecutorStrategy strategy : ExecutorStrategy.values()) {
+            ExecutorService executor;
+            try {
+                executor = strategy.create();
+            } catch (UnsupportedOperationException e) {
+                System.out.println(String.format("%-20s %s", strategy, "unsupported on this JDK"));
+                continue;
+            }
+
+            try {
+                for(int i = 0; i < WARMUP_ROUNDS; i++) {
+                    runBatch(executor);
+                }
+                BatchResult result = runBatch(executor);
+
+                assertEquals(BATCH_SIZE, result.latencies.length);
+                System.out.println(String.format("%-20s %12.0f %10.1f %10.1f %10.1f %8d", strategy,
+                        result.throughput(),
+                        result.percentile(0.50) / 1_000d,
+                        result.percentile(0.99) / 1_000d,
+                        result.percentile(0.999) / 1_000d,
+                        result.threads));
+            } finally {
+                if(!strategy.isShared())
+                    executor.shutdownNow();
+            }
+        }
+    }
+
+    private static BatchResult runBatch(ExecutorService executor) {
+        long[] latencies = new long[BATCH_SIZE];
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH_SIZE];
+
+        long start = System.nanoTime();
+        for(int i = 0; i < BATCH_SIZE; i++) {
+            int index = i;
+            long submitted = System.nanoTime();
+            futures[i] = CompletableFuture.supplyAsync(() -> {
+                threads.add(Thread.currentThread());
+                Payload result = transportMedium.deliveryPayload(payloads[index]);
+                latencies[index] = System.nanoTime() - submitted;
+                return result;
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).join();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new BatchResult(latencies, elapsed, threads.size());
+    }
+
+    private static class BatchResult {
+        private final long[] latencies;
+        private final long elapsedNanos;
+        private final int threads;
+
+        private BatchResult(long[] latencies, long elapsedNanos, int threads) {
+            this.latencies = latencies;
+            this.elapsedNanos = elapsedNanos;
+            this.threads = threads;
+        }
+
+        private double throughput() {
+            return latencies.length * 1_000_000_000d / elapsedNanos;
+        }
+
+        // Latencies are sorted, so the percentile is a direct index
+        private long percentile(double quantile) {
+            int index = (int) Math.ceil(quantile * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+        }
+    }
 }
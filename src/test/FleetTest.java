@@ -0,0 +1,75 @@
+package test;
+
+import mock.app.DeliveryReport;
+import mock.app.ExecutorStrategy;
+import mock.app.PackageDeliveryApplication;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.TransportLog;
+import mock.pipeline.FleetScheduler;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class FleetTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterClass
+    public static void log() {
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // An idle fast truck steals the backlog queued on a slow truck
+    public void steal() {
+        Transport slow = new Transport(10, TransportLog.NONE, 5, TimeUnit.MILLISECONDS);
+        Transport fast = new Transport(false, 10);
+        FleetScheduler fleet = new FleetScheduler(Arrays.asList(slow, fast), executor);
+
+        List<CompletableFuture<Payload>> futures = new ArrayList<>();
+        for(int i = 0; i < 40; i++) {
+            futures.add(fleet.submit(0, new Payload<>("Package-" + i, i)));
+        }
+        for(int i = 0; i < 40; i++) {
+            assertEquals("Package-" + i, futures.get(i).join().getName());
+        }
+
+        assertEquals(40, fleet.getDelivered(0) + fleet.getDelivered(1));
+        assertTrue(fleet.getStolen(1) > 0);
+        assertTrue(fleet.getDelivered(1) > fleet.getDelivered(0));
+        assertTrue(fleet.getUtilization(0) > 0);
+        assertEquals(0, fleet.getQueued(0));
+    }
+
+    @Test
+    // The application delivers every package through the fleet
+    public void startFleet() {
+        PackageDeliveryApplication app = new PackageDeliveryApplication(ExecutorStrategy.FIXED);
+        app.setUpHeadquarters(4);
+        app.setUpTrucks(1, 10);
+        app.setUpTrucks(1, 10_000);
+        app.setUpPackages(200);
+        try {
+            DeliveryReport report = app.startFleet();
+            assertEquals(200, report.getDelivered());
+            assertEquals(0, report.getFailed());
+            assertEquals(200, app.getFleet().getDelivered(0) + app.getFleet().getDelivered(1));
+        } finally {
+            app.shutdown();
+        }
+    }
+}
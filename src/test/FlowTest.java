@@ -0,0 +1,162 @@
+package test;
+
+import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.flow.DeliveryFlow;
+import mock.flow.PayloadStage;
+import mock.flow.StageProcessor;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FlowTest {
+
+    private static ExecutorService executor;
+    private static List<Payload> payloads;
+
+    @BeforeClass
+    public static void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        DestinationRegistry registry = new DestinationRegistry(8);
+        payloads = new ArrayList<>();
+        for(int i = 0; i < 10_000; i++) {
+            Destination origin = registry.intern("HQ-" + i % 4);
+            Destination destination = registry.intern("HQ-" + (i + 1) % 4);
+            payloads.add(new Payload<>("Package-" + i, i, origin, destination));
+        }
+    }
+
+    @AfterClass
+    public static void log() {
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Bundling, transport and confirmation run fused in one processor and every payload is delivered
+    public void stream() {
+        AtomicInteger transports = new AtomicInteger();
+        Transport transport = new Transport(false, 10) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                transports.incrementAndGet();
+                return super.deliveryPayload(payload);
+            }
+        };
+        StageProcessor processor = new StageProcessor(PayloadStage.bundle(10), executor, 64)
+                .then(PayloadStage.transport(transport))
+                .then(PayloadStage.confirm());
+        DeliveryFlow.publish(payloads::forEach, executor, 256).subscribe(processor);
+
+        // 2500 payloads per destination, 250 full bundles each
+        assertEquals(1_000L, (long) DeliveryFlow.count(processor, 32).join());
+        assertEquals(1_000, transports.get());
+        for(Payload payload : payloads) {
+            assertTrue(payload.isDelivered());
+        }
+    }
+
+    @Test
+    // The processor never asks upstream for more than its prefetch while downstream has no demand
+    public void backpressure() throws InterruptedException {
+        AtomicLong upstreamDemand = new AtomicLong();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        StageProcessor processor = new StageProcessor((payload, downstream) -> downstream.accept(payload), executor, 16);
+        processor.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                upstreamDemand.addAndGet(n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        List<Payload> received = new CopyOnWriteArrayList<>();
+        Flow.Subscription[] downstream = new Flow.Subscription[1];
+        processor.subscribe(new Flow.Subscriber<Payload>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                downstream[0] = subscription;
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onNext(Payload item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        subscribed.await();
+        for(int i = 0; i < 16; i++) {
+            processor.onNext(payloads.get(i));
+        }
+        Thread.sleep(50);
+        assertEquals(16, upstreamDemand.get());
+        assertTrue(received.isEmpty());
+
+        downstream[0].request(5);
+        Thread.sleep(50);
+        assertEquals(5, received.size());
+        assertEquals(16, upstreamDemand.get());
+
+        // Twelve processed payloads, three quarters of the prefetch, are topped up
+        downstream[0].request(7);
+        Thread.sleep(50);
+        assertEquals(12, received.size());
+        assertEquals(28, upstreamDemand.get());
+    }
+
+    @Test
+    // A single result is bridged back to a CompletableFuture and an empty stream fails it
+    public void first() {
+        StageProcessor processor = new StageProcessor(PayloadStage.transport(new Transport(false, 10)), executor, 8);
+        DeliveryFlow.publish(payloads::forEach, executor, 8).subscribe(processor);
+        assertEquals("Package-0", DeliveryFlow.first(processor).join().getName());
+
+        StageProcessor empty = new StageProcessor(PayloadStage.confirm(), executor, 8);
+        DeliveryFlow.publish(consumer -> { }, executor, 8).subscribe(empty);
+        Throwable failure = DeliveryFlow.first(empty).handle((result, throwable) -> throwable).join();
+        assertTrue(failure instanceof NoSuchElementException);
+    }
+
+    @Test
+    // Once the subscriber cancels, the source stops reading instead of running to its end
+    public void cancel() throws InterruptedException {
+        AtomicInteger produced = new AtomicInteger();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Flow.Publisher<Payload> publisher = DeliveryFlow.publish(consumer -> {
+            try {
+                for(int i = 0; i < 1_000; i++) {
+                    for(Payload payload : payloads) {
+                        produced.incrementAndGet();
+                        consumer.accept(payload);
+                    }
+                }
+            } finally {
+                stopped.countDown();
+            }
+        }, executor, 8);
+        assertEquals("Package-0", DeliveryFlow.first(publisher).join().getName());
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertTrue(String.valueOf(produced.get()), produced.get() < payloads.size());
+    }
+}
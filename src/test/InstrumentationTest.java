@@ -0,0 +1,83 @@
+package test;
+
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.metrics.PipelineInstrumentation;
+import mock.metrics.StageSnapshot;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+public class InstrumentationTest {
+
+    private static Payload<String> defaultStringPayload;
+    private static Payload<Integer> defaultIntPayload;
+    private static Transport transportSmall;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp() {
+        defaultStringPayload = new Payload<>("Default", "I am the default String payload");
+        defaultIntPayload = new Payload<>("Default", 10);
+        transportSmall = new Transport(false, 10);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterClass
+    public static void log() {
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Each named stage of a supplyAsync -> thenApplyAsync -> handle pipeline records its own metrics
+    public void stages() {
+        PipelineInstrumentation metrics = new PipelineInstrumentation();
+        Executor transportExecutor = metrics.executor("transport", executor);
+
+        for(int i = 0; i < 100; i++) {
+            int attempt = i;
+            CompletableFuture
+                    .supplyAsync(metrics.supplier("transport", () -> transportSmall.deliveryPayload(defaultIntPayload)), transportExecutor)
+                    .thenApplyAsync(metrics.function("bundle", payload -> {
+                        if(attempt % 10 == 0)
+                            throw new IllegalStateException("Bundle Failure");
+                        return payload;
+                    }), metrics.executor("bundle", executor))
+                    .handle(metrics.biFunction("handle", (result, throwable) -> result))
+                    .join();
+        }
+
+        List<StageSnapshot> snapshots = metrics.snapshot();
+        metrics.export(System.out);
+
+        assertEquals(3, snapshots.size());
+        StageSnapshot bundle = snapshots.get(0);
+        assertEquals("bundle", bundle.getName());
+        assertEquals(90, bundle.getCompletions());
+        assertEquals(10, bundle.getExceptions());
+        assertEquals(100, bundle.getQueueWait().getCount());
+
+        StageSnapshot transport = snapshots.get(2);
+        assertEquals("transport", transport.getName());
+        assertEquals(100, transport.getCompletions());
+        assertEquals(100, transport.getExecution().getCount());
+        assertTrue(transport.getExecution().getValueAtQuantile(0.5) <= transport.getExecution().getMax());
+    }
+
+    @Test
+    // Stages combined with thenCombine are recorded like any other
+    public void thenCombine() {
+        PipelineInstrumentation metrics = new PipelineInstrumentation();
+        CompletableFuture<Payload> first = CompletableFuture.supplyAsync(metrics.supplier("first", () -> transportSmall.deliveryPayload(defaultIntPayload)));
+        CompletableFuture<Payload> second = CompletableFuture.supplyAsync(metrics.supplier("second", () -> transportSmall.deliveryPayload(defaultStringPayload)));
+        first.thenCombine(second, metrics.<Payload, Payload, Payload>biFunction("combine", (s1, s2) -> s1)).join();
+
+        assertEquals(1, metrics.stage("combine").snapshot().getCompletions());
+    }
+}
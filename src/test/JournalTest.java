@@ -0,0 +1,270 @@
+package test;
+
+import mock.app.DeliveryReport;
+import mock.app.PackageDeliveryApplication;
+import mock.app.RoutePlanner;
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.log.DeliveryJournal;
+import mock.log.JournalReplay;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JournalTest {
+
+    private static Path root;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        root = Files.createTempDirectory("journal");
+    }
+
+    @AfterClass
+    public static void log() throws IOException {
+        try(Stream<Path> paths = Files.walk(root)) {
+            for(Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Events from many threads are all committed, spread over rotated segments and replayed
+    public void replay() throws Exception {
+        Path directory = root.resolve("replay");
+        DeliveryJournal journal = new DeliveryJournal(directory, 160, 64, 16);
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            int offset = t * 250;
+            threads[t] = new Thread(() -> {
+                for(int i = offset; i < offset + 250; i++) {
+                    journal.append(DeliveryJournal.DISPATCHED, i, i % 4);
+                    journal.append(DeliveryJournal.DELIVERED, i, (i + 1) % 4);
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        journal.close();
+        assertEquals(2_000, journal.getCommitted());
+
+        // Ten records per segment
+        try(Stream<Path> segments = Files.list(directory)) {
+            assertEquals(200, segments.count());
+        }
+        JournalReplay replay = new JournalReplay();
+        assertEquals(2_000, DeliveryJournal.replay(directory, replay));
+        assertEquals(1_000, replay.getDelivered());
+        assertEquals(0, replay.getInFlight());
+        assertEquals(2, replay.getLocation(1));
+    }
+
+    @Test
+    // A torn record ends the journal, reopening it appends right after the last valid record
+    public void torn() throws IOException {
+        Path directory = root.resolve("torn");
+        DeliveryJournal journal = new DeliveryJournal(directory, 1_024, 16, 16);
+        for(int i = 0; i < 5; i++) {
+            journal.dispatched(i, null);
+        }
+        journal.close();
+
+        Path segment;
+        try(Stream<Path> segments = Files.list(directory)) {
+            segment = segments.findFirst().get();
+        }
+        // Corrupt the checksum of the fifth record
+        try(FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), 4 * 16 + 12);
+        }
+        List<Integer> ids = new ArrayList<>();
+        DeliveryJournal.replay(directory, (type, payloadId, locationId) -> ids.add(payloadId));
+        assertEquals(List.of(0, 1, 2, 3), ids);
+
+        DeliveryJournal reopened = new DeliveryJournal(directory, 1_024, 16, 16);
+        reopened.delivered(0, null);
+        reopened.close();
+        JournalReplay replay = new JournalReplay();
+        assertEquals(5, DeliveryJournal.replay(directory, replay));
+        assertTrue(replay.isDelivered(0));
+        assertTrue(replay.isInFlight(3));
+        assertFalse(replay.isInFlight(4));
+        assertEquals(Destination.UNREGISTERED, replay.getLocation(3));
+    }
+
+    @Test
+    // Closing while producers wait on a full ring still commits every claimed event and returns
+    public void closeUnderLoad() throws Exception {
+        Path directory = root.resolve("close");
+        DeliveryJournal journal = new DeliveryJournal(directory, 1 << 20, 4, 2);
+        AtomicLong appended = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for(int i = 0; i < 10_000; i++) {
+                        journal.dispatched(i, null);
+                        appended.incrementAndGet();
+                    }
+                } catch (IllegalStateException e) {
+                    // Closed
+                }
+            });
+            threads[t].start();
+        }
+        Thread.sleep(5);
+        Thread closer = new Thread(() -> {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        closer.start();
+        closer.join(10_000);
+        assertFalse(closer.isAlive());
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(appended.get(), journal.getCommitted());
+        assertEquals(appended.get(), DeliveryJournal.replay(directory, (type, payloadId, locationId) -> { }));
+    }
+
+    @Test
+    // Routed packages are journaled at their origin, at every intermediate headquarters and at their destination
+    public void routed() throws IOException {
+        Path directory = root.resolve("routed");
+        PackageDeliveryApplication app = new PackageDeliveryApplication();
+        app.setUpHeadquarters(4);
+        app.setUpTrucks(2, 10);
+        app.setUpPackages(8);
+        app.setUpJournal(directory);
+        RoutePlanner planner = new RoutePlanner(app.getRegistry());
+        List<Destination> headquarters = app.getHeadquarters();
+        for(int i = 1; i < headquarters.size(); i++) {
+            planner.link(headquarters.get(i - 1), headquarters.get(i));
+        }
+        assertEquals(8, app.startRouted(planner).getDelivered());
+        app.shutdown();
+
+        int[] origins = new int[8];
+        int[] moves = new int[8];
+        DeliveryJournal.replay(directory, (type, payloadId, locationId) -> {
+            if(type == DeliveryJournal.DISPATCHED)
+                origins[payloadId] = locationId;
+            else if(type == DeliveryJournal.MOVED)
+                moves[payloadId]++;
+        });
+        for(int i = 0; i < 8; i++) {
+            Payload payload = app.getPackages().get(i);
+            assertEquals(payload.getOrigin().getId(), origins[i]);
+            int hops = Math.abs(payload.getOrigin().getId() - payload.getDestination().getId());
+            assertEquals(Math.max(0, hops - 1), moves[i]);
+        }
+        JournalReplay replay = new JournalReplay();
+        DeliveryJournal.replay(directory, replay);
+        assertEquals(8, replay.getDelivered());
+    }
+
+    @Test
+    // A restarted application skips the delivered packages and resumes the ones left in flight
+    public void resume() throws IOException {
+        Path directory = root.resolve("resume");
+        DeliveryJournal journal = new DeliveryJournal(directory);
+        for(int i = 0; i < 10; i++) {
+            journal.append(DeliveryJournal.DISPATCHED, i, i % 4);
+        }
+        for(int i = 0; i < 6; i++) {
+            journal.append(DeliveryJournal.DELIVERED, i, (i + 1) % 4);
+        }
+        journal.close();
+
+        PackageDeliveryApplication app = new PackageDeliveryApplication();
+        app.setUpHeadquarters(4);
+        app.setUpTrucks(2, 10);
+        app.setUpPackages(10);
+        app.setUpJournal(directory);
+        assertEquals(4, app.getReplay().getInFlight());
+        assertEquals(6, app.getReplay().getDelivered());
+        DeliveryReport report = app.start();
+        app.shutdown();
+        assertEquals(4, report.getDelivered());
+        for(int i = 0; i < 10; i++) {
+            assertTrue(app.getPackages().get(i).isDelivered());
+        }
+
+        // Everything is journaled as delivered now, a third run has nothing left to do
+        PackageDeliveryApplication restarted = new PackageDeliveryApplication();
+        restarted.setUpHeadquarters(4);
+        restarted.setUpTrucks(2, 10);
+        restarted.setUpPackages(10);
+        restarted.setUpJournal(directory);
+        assertEquals(10, restarted.getReplay().getDelivered());
+        assertEquals(0, restarted.start().getDelivered());
+        restarted.shutdown();
+    }
+
+    @Test
+    // The routed and fleet modes skip the packages the journal shows delivered too
+    public void resumeRoutedAndFleet() throws IOException {
+        for(boolean routed : new boolean[] {true, false}) {
+            Path directory = root.resolve(routed ? "resumeRouted" : "resumeFleet");
+            DeliveryJournal journal = new DeliveryJournal(directory);
+            for(int i = 0; i < 10; i++) {
+                journal.append(DeliveryJournal.DISPATCHED, i, i % 4);
+            }
+            for(int i = 0; i < 6; i++) {
+                journal.append(DeliveryJournal.DELIVERED, i, (i + 1) % 4);
+            }
+            journal.close();
+
+            PackageDeliveryApplication app = new PackageDeliveryApplication();
+            app.setUpHeadquarters(4);
+            app.setUpTrucks(2, 10);
+            app.setUpPackages(10);
+            app.setUpJournal(directory);
+            DeliveryReport report;
+            if(routed) {
+                RoutePlanner planner = new RoutePlanner(app.getRegistry());
+                List<Destination> headquarters = app.getHeadquarters();
+                for(int i = 1; i < headquarters.size(); i++) {
+                    planner.link(headquarters.get(i - 1), headquarters.get(i));
+                }
+                report = app.startRouted(planner);
+            } else {
+                report = app.startFleet();
+            }
+            app.shutdown();
+            assertEquals(4, report.getDelivered());
+            assertEquals(0, report.getFailed());
+            for(int i = 0; i < 10; i++) {
+                assertTrue(app.getPackages().get(i).isDelivered());
+            }
+
+            JournalReplay replay = new JournalReplay();
+            DeliveryJournal.replay(directory, replay);
+            assertEquals(10, replay.getDelivered());
+            assertEquals(0, replay.getInFlight());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package test;
+
+import mock.app.ExecutorStrategy;
+import mock.app.LoadGenerator;
+import mock.app.LoadReport;
+import mock.app.PackageDeliveryApplication;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LoadTest {
+
+    private static PackageDeliveryApplication app;
+
+    @BeforeClass
+    public static void setUp() {
+        app = new PackageDeliveryApplication(ExecutorStrategy.FIXED);
+        app.setUpHeadquarters(4);
+    }
+
+    @AfterClass
+    public static void log() {
+        app.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Arrivals follow the offered rate, failures and destination skew follow their settings
+    public void arrivals() {
+        LoadGenerator generator = app.createLoadGenerator();
+        generator.setArrivalRate(4_000);
+        generator.setPayloadSize(10);
+        generator.setFailureRate(0.25);
+        generator.setDestinationSkew(2);
+        generator.setSampleInterval(100, TimeUnit.MILLISECONDS);
+        generator.setSeed(42);
+        LoadReport report = generator.run(500, TimeUnit.MILLISECONDS);
+
+        // About 2000 arrivals, the Poisson spread is a few dozen
+        long total = report.getDelivered() + report.getFailed() + report.getDropped();
+        assertTrue(String.valueOf(total), total > 1_700 && total < 2_300);
+        assertEquals(0, report.getDropped());
+        double failures = (double) report.getFailed() / total;
+        assertTrue(String.valueOf(failures), failures > 0.2 && failures < 0.3);
+        // Zipf with exponent 2 sends sixteen times more to the first headquarters than to the fourth
+        long[] arrivals = report.getArrivals();
+        assertTrue(arrivals[0] > arrivals[3] * 8);
+        assertEquals(total, arrivals[0] + arrivals[1] + arrivals[2] + arrivals[3]);
+
+        assertEquals(total, report.getLatency().getCount());
+        assertTrue(report.getHeapTimes().length >= 5);
+        assertEquals(report.getHeapTimes().length, report.getHeapUsed().length);
+        assertTrue(report.getGcMillis() >= 0);
+    }
+
+    @Test
+    // A saturated executor shows its backlog in the corrected latency while the service time stays short
+    public void coordinatedOmission() {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        LoadGenerator generator = new LoadGenerator(app.getHeadquarters(), single);
+        generator.setArrivalRate(2_000);
+        generator.setPayloadSize(10);
+        generator.setSeed(7);
+        // Stall the only worker for 200ms, every arrival meanwhile queues up behind it
+        single.execute(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        LoadReport report = generator.run(400, TimeUnit.MILLISECONDS);
+        single.shutdown();
+
+        assertEquals(0, report.getFailed());
+        // Half the arrivals came during the stall, the earliest of them waited for most of it
+        assertTrue(report.getLatency().getValueAtQuantile(0.9) > TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(report.getServiceTime().getValueAtQuantile(0.9) < TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(report.getLatency().getMax() > TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    // Arrivals beyond the backlog cap are dropped and the run is reported as saturated
+    public void saturation() {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        LoadGenerator generator = new LoadGenerator(app.getHeadquarters(), single);
+        generator.setArrivalRate(2_000);
+        generator.setMaxOutstanding(10);
+        single.execute(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        LoadReport report = generator.run(100, TimeUnit.MILLISECONDS);
+        single.shutdown();
+
+        assertTrue(report.getDropped() > 0);
+        assertFalse(report.isSustained());
+        assertTrue(report.toString().contains("saturated"));
+    }
+}
@@ -0,0 +1,96 @@
+package test;
+
+import mock.app.DeliveryReport;
+import mock.app.PackageDeliveryApplication;
+import mock.entity.Destination;
+import mock.entity.Payload;
+import mock.pipeline.ManifestReader;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ManifestTest {
+
+    private static Path manifest;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        manifest = Files.createTempFile("manifest", ".csv");
+        StringBuilder lines = new StringBuilder("# name,origin,destination,contents\n");
+        for(int i = 0; i < 1_000; i++) {
+            lines.append("Package-").append(i).append(",HQ-").append(i % 4).append(",HQ-").append((i + 1) % 4)
+                    .append(",contents ").append(i).append('\n');
+        }
+        // The last line has no trailing newline
+        lines.append("Last,HQ-0,HQ-1,last contents");
+        Files.write(manifest, lines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterClass
+    public static void log() throws IOException {
+        Files.deleteIfExists(manifest);
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Lines split across buffer refills are parsed as whole payloads
+    public void forEach() throws IOException {
+        ManifestReader reader = new ManifestReader(manifest, Destination::new, 64);
+        List<Payload> payloads = new ArrayList<>();
+        reader.forEach(payloads::add);
+
+        assertEquals(1_001, payloads.size());
+        assertEquals(1_001, reader.getLinesRead());
+        assertEquals(Files.size(manifest), reader.getBytesRead());
+        assertEquals("Package-7", payloads.get(7).getName());
+        assertEquals("HQ-3", payloads.get(7).getOrigin().getName());
+        assertEquals("HQ-0", payloads.get(7).getDestination().getName());
+        assertEquals("contents 7", payloads.get(7).getContents());
+        assertEquals("last contents", payloads.get(1_000).getContents());
+    }
+
+    @Test
+    // A line that does not fit in the buffer is reported instead of silently cut
+    public void lineTooLong() {
+        ManifestReader reader = new ManifestReader(manifest, Destination::new, 16);
+        assertThrows(IOException.class, () -> reader.forEach(payload -> { }));
+    }
+
+    @Test
+    // A malformed line is reported by its line in the file, counting the comments and blank lines before it
+    public void malformedLine() throws IOException {
+        Path malformed = Files.createTempFile("malformed", ".csv");
+        try {
+            String lines = "# name,origin,destination,contents\n\nFirst,HQ-0,HQ-1,first\r\n\n# broken next\nBroken,HQ-0\n";
+            Files.write(malformed, lines.getBytes(StandardCharsets.UTF_8));
+            ManifestReader reader = new ManifestReader(malformed, Destination::new);
+            IOException thrown = assertThrows(IOException.class, () -> reader.forEach(payload -> { }));
+            assertTrue(thrown.getMessage(), thrown.getMessage().startsWith("Malformed manifest line 6 "));
+            assertEquals(1, reader.getLinesRead());
+        } finally {
+            Files.deleteIfExists(malformed);
+        }
+    }
+
+    @Test
+    // The application streams the manifest into its delivery pipeline
+    public void start() throws IOException {
+        PackageDeliveryApplication app = new PackageDeliveryApplication();
+        app.setUpTrucks(2, 10);
+        DeliveryReport report = app.start(manifest);
+
+        assertEquals(1_001, report.getDelivered());
+        assertEquals(4, app.getHeadquarters().size());
+        assertTrue(app.getPackages().isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package test;
+
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.pipeline.BoundedDeliveryStage;
+import mock.pipeline.RejectionPolicy;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PipelineTest {
+
+    private static Transport transportSmall;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp() {
+        transportSmall = new Transport(false, 10);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void log() {
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // No more than the in-flight limit of deliveries ever run at once
+    public void boundedInFlight() throws Exception {
+        BoundedDeliveryStage stage = new BoundedDeliveryStage(executor, 2, 4, RejectionPolicy.BLOCK);
+        AtomicInteger maxSeen = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+
+        for(int i = 0; i < 1_000; i++) {
+            stage.submit(transportSmall, new Payload<>("Package-" + i, i))
+                    .thenRun(() -> {
+                        maxSeen.accumulateAndGet(stage.getInFlight(), Math::max);
+                        delivered.incrementAndGet();
+                    });
+            assertTrue(stage.getAdmitted() <= 6);
+        }
+        stage.awaitIdle();
+
+        assertEquals(1_000, delivered.get());
+        assertTrue(maxSeen.get() <= 2);
+        assertEquals(0, stage.getAdmitted());
+    }
+
+    @Test
+    // A full stage fails new payloads right away under the FAIL policy
+    public void rejection() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Executor blocked = runnable -> executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            runnable.run();
+        });
+        BoundedDeliveryStage stage = new BoundedDeliveryStage(blocked, 1, 1, RejectionPolicy.FAIL);
+
+        CompletableFuture<Payload> running = stage.submit(transportSmall, new Payload<>("Running", 1));
+        CompletableFuture<Payload> queued = stage.submit(transportSmall, new Payload<>("Queued", 2));
+        CompletableFuture<Payload> rejected = stage.submit(transportSmall, new Payload<>("Rejected", 3));
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertThrows(ExecutionException.class, rejected::get);
+
+        release.countDown();
+        assertEquals("Running", running.get().getName());
+        assertEquals("Queued", queued.get().getName());
+    }
+}
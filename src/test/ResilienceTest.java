@@ -0,0 +1,131 @@
+package test;
+
+import mock.concurrent.HierarchicalTimerWheel;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.pipeline.ResilientDelivery;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResilienceTest {
+
+    private static ExecutorService executor;
+    private static HierarchicalTimerWheel timer;
+    private static List<Transport> trucks;
+
+    @BeforeClass
+    public static void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        timer = new HierarchicalTimerWheel(executor);
+        trucks = Arrays.asList(new Transport(false, 10), new Transport(false, 10));
+    }
+
+    @AfterClass
+    public static void log() {
+        timer.close();
+        executor.shutdown();
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Failed attempts are retried after a backoff until one succeeds
+    public void retry() {
+        AtomicInteger calls = new AtomicInteger();
+        ResilientDelivery delivery = new ResilientDelivery(trucks, executor, timer, (transport, payload) -> {
+            if(calls.incrementAndGet() <= 2)
+                transport.deliveryPayload(payload, true);
+            return transport.deliveryPayload(payload);
+        });
+        delivery.setRetry(3, 1, 10, TimeUnit.MILLISECONDS);
+
+        Payload<Integer> payload = new Payload<>("Default", 10);
+        assertEquals(payload, delivery.deliver(payload).join());
+        assertEquals(3, delivery.getAttempts());
+        assertEquals(2, delivery.getRetries());
+    }
+
+    @Test
+    // The last failure is reported once the attempts run out
+    public void exhausted() {
+        ResilientDelivery delivery = new ResilientDelivery(trucks, executor, timer, (transport, payload) -> {
+            transport.deliveryPayload(payload, true);
+            return payload;
+        });
+        delivery.setRetry(2, 1, 10, TimeUnit.MILLISECONDS);
+
+        Throwable failure = delivery.deliver(new Payload<>("Default", 10)).handle((result, throwable) -> throwable).join();
+        assertEquals("Delivery Failure", failure.getMessage());
+        assertEquals(2, delivery.getAttempts());
+    }
+
+    @Test
+    // A slow outlier is hedged on the other truck, which wins, and the outlier's worker is interrupted
+    public void hedge() {
+        ResilientDelivery delivery = new ResilientDelivery(trucks, executor, timer, (transport, payload) -> {
+            if(payload.getName().equals("Outlier") && transport == trucks.get(0))
+                Thread.sleep(10_000);
+            return transport.deliveryPayload(payload);
+        });
+        delivery.setHedging(0.95, 20);
+        for(int i = 0; i < 20; i++) {
+            delivery.deliver(new Payload<>("Package-" + i, i)).join();
+        }
+        assertTrue(delivery.getHedgeDelayNanos() >= 0);
+
+        // Twenty deliveries so far, the outlier starts on the first truck
+        long start = System.nanoTime();
+        Payload<Integer> outlier = new Payload<>("Outlier", 10);
+        assertEquals(outlier, delivery.deliver(outlier).join());
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1, delivery.getHedges());
+        assertEquals(1, delivery.getHedgeWins());
+    }
+
+    @Test
+    // A retry that cannot be scheduled on a closed timer fails the delivery instead of leaving it pending
+    public void closedTimer() {
+        HierarchicalTimerWheel closed = new HierarchicalTimerWheel(executor);
+        closed.close();
+        ResilientDelivery delivery = new ResilientDelivery(trucks, executor, closed, (transport, payload) -> {
+            transport.deliveryPayload(payload, true);
+            return payload;
+        });
+        delivery.setRetry(3, 1, 10, TimeUnit.MILLISECONDS);
+
+        Throwable failure = delivery.deliver(new Payload<>("Default", 10)).handle((result, throwable) -> throwable)
+                .orTimeout(5, TimeUnit.SECONDS).join();
+        assertEquals("Delivery Failure", failure.getMessage());
+        assertEquals(1, delivery.getAttempts());
+    }
+
+    @Test
+    // Cancelling the returned future interrupts the attempt in flight
+    public void cancel() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ResilientDelivery delivery = new ResilientDelivery(trucks, executor, timer, (transport, payload) -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return payload;
+        });
+
+        CompletableFuture<Payload> result = delivery.deliver(new Payload<>("Default", 10));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        result.cancel(true);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,143 @@
+package test;
+
+import mock.app.DeliveryReport;
+import mock.app.PackageDeliveryApplication;
+import mock.app.RoutePlanner;
+import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.log.TransportLog;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RouteTest {
+
+    @AfterClass
+    public static void log() {
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Routes take the fewest hops and unreachable headquarters are refused
+    public void route() {
+        DestinationRegistry registry = new DestinationRegistry(8);
+        Destination a = registry.intern("A");
+        Destination b = registry.intern("B");
+        Destination c = registry.intern("C");
+        Destination d = registry.intern("D");
+        Destination island = registry.intern("Island");
+        RoutePlanner planner = new RoutePlanner(registry);
+        planner.link(a, b);
+        planner.link(b, c);
+        planner.link(c, d);
+        planner.link(a, d);
+
+        assertEquals(List.of(a, b), planner.route(a, b));
+        assertEquals(3, planner.route(b, d).size());
+        assertEquals(3, planner.route(a, c).size());
+        assertEquals(List.of(a), planner.route(a, a));
+        assertThrows(IllegalArgumentException.class, () -> planner.route(a, island));
+        assertThrows(IllegalArgumentException.class, () -> planner.route(a, new Destination("B")));
+    }
+
+    @Test
+    // Payloads sharing a road at the same step ride the same trip and every payload reaches its destination
+    public void sharedHops() {
+        DestinationRegistry registry = new DestinationRegistry(8);
+        Destination a = registry.intern("A");
+        Destination d = registry.intern("D");
+        Destination hub = registry.intern("Hub");
+        Destination c = registry.intern("C");
+        RoutePlanner planner = new RoutePlanner(registry);
+        planner.link(a, hub);
+        planner.link(d, hub);
+        planner.link(hub, c);
+
+        AtomicInteger trips = new AtomicInteger();
+        Transport truck = new Transport(10, TransportLog.NONE) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                trips.incrementAndGet();
+                return super.deliveryPayload(payload);
+            }
+        };
+
+        List<Payload> payloads = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            payloads.add(new Payload<>("Payload-" + i, i, i % 2 == 0 ? a : d, c));
+        }
+        List<Payload> delivered = planner.schedule(payloads, Collections.singletonList(truck), ForkJoinPool.commonPool()).join();
+
+        // A -> Hub, D -> Hub, then a single Hub -> C trip carrying all ten payloads
+        assertEquals(3, trips.get());
+        assertEquals(10, delivered.size());
+        for(Payload payload : delivered) {
+            assertTrue(payload.isDelivered());
+        }
+    }
+
+    @Test
+    // The application delivers its packages along multi-hop routes
+    public void startRouted() {
+        PackageDeliveryApplication app = new PackageDeliveryApplication();
+        app.setUpHeadquarters(6);
+        app.setUpTrucks(3, 10);
+        app.setUpPackages(60);
+        RoutePlanner planner = new RoutePlanner(app.getRegistry());
+        // A line of headquarters, so packages from HQ-5 to HQ-0 cross every one of them
+        List<Destination> headquarters = app.getHeadquarters();
+        for(int i = 1; i < headquarters.size(); i++) {
+            planner.link(headquarters.get(i - 1), headquarters.get(i));
+        }
+
+        try {
+            DeliveryReport report = app.startRouted(planner);
+            assertEquals(60, report.getDelivered());
+            assertEquals(10, app.getDelivered(headquarters.get(0)));
+        } finally {
+            app.shutdown();
+        }
+    }
+
+    @Test
+    // A failed hop only fails the packages it carries
+    public void failedHop() {
+        PackageDeliveryApplication app = new PackageDeliveryApplication();
+        app.setUpHeadquarters(4);
+        app.setUpPackages(32);
+        RoutePlanner planner = new RoutePlanner(app.getRegistry());
+        List<Destination> headquarters = app.getHeadquarters();
+        for(int i = 1; i < headquarters.size(); i++) {
+            planner.link(headquarters.get(i - 1), headquarters.get(i));
+        }
+        // Every trip into HQ-3 breaks down
+        Destination broken = headquarters.get(3);
+        app.getTrucks().add(new Transport(10, TransportLog.NONE) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                if(payload.getDestination() == broken)
+                    throw new IllegalStateException("Road to " + broken + " is closed");
+                return super.deliveryPayload(payload);
+            }
+        });
+
+        try {
+            DeliveryReport report = app.startRouted(planner);
+            assertEquals(24, report.getDelivered());
+            assertEquals(8, report.getFailed());
+            assertEquals(0, app.getDelivered(broken));
+        } finally {
+            app.shutdown();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package test;
+
+import mock.app.DeliveryReport;
+import mock.app.ExecutorStrategy;
+import mock.app.PackageDeliveryApplication;
+import mock.concurrent.SpscQueue;
+import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
+import mock.entity.Payload;
+import mock.entity.Transport;
+import mock.pipeline.ShardedDelivery;
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ShardTest {
+
+    @AfterClass
+    public static void log() {
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Elements pass from one producer thread to one consumer thread in order, through a queue far smaller than the stream
+    public void spscQueue() throws InterruptedException {
+        SpscQueue<Integer> queue = new SpscQueue<>(10);
+        assertEquals(16, queue.capacity());
+        Thread producer = new Thread(() -> {
+            for(int i = 0; i < 1_000_000; i++) {
+                while(!queue.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        int expected = 0;
+        while(expected < 1_000_000) {
+            Integer element = queue.poll();
+            if(element == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected++, (int) element);
+        }
+        producer.join();
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    // Payloads leaving a shard are handed to the shard of their destination, a single shard hands nothing off
+    public void handoffs() {
+        DestinationRegistry registry = new DestinationRegistry(8);
+        List<Payload> payloads = new ArrayList<>();
+        for(int i = 0; i < 8_000; i++) {
+            Destination origin = registry.intern("HQ-" + i % 4);
+            Destination destination = registry.intern("HQ-" + (i + 1) % 4);
+            payloads.add(new Payload<>("Package-" + i, i, origin, destination));
+        }
+        // Fewer trucks than shards, the shards share them
+        List<Transport> trucks = List.of(new Transport(false, 10), new Transport(false, 10));
+
+        try(ShardedDelivery sharded = new ShardedDelivery(4, trucks, 64)) {
+            assertEquals(8_000, sharded.deliver(payloads));
+            for(int shard = 0; shard < 4; shard++) {
+                assertEquals(2_000, sharded.getDelivered(shard));
+                assertEquals(2_000, sharded.getHandoffs(shard));
+            }
+        }
+        try(ShardedDelivery single = new ShardedDelivery(1, trucks, 64)) {
+            assertEquals(8_000, single.deliver(payloads));
+            assertEquals(0, single.getHandoffs(0));
+        }
+        for(Payload payload : payloads) {
+            assertTrue(payload.isDelivered());
+        }
+    }
+
+    @Test
+    // A shard dying on an error fails the run instead of leaving the other shards waiting on it, the next run starts clean
+    public void shardFailure() throws Exception {
+        DestinationRegistry registry = new DestinationRegistry(8);
+        List<Payload> payloads = new ArrayList<>();
+        for(int i = 0; i < 8_000; i++) {
+            Destination origin = registry.intern("HQ-" + i % 4);
+            Destination destination = registry.intern("HQ-" + (i + 1) % 4);
+            payloads.add(new Payload<>("Package-" + i, i, origin, destination));
+        }
+        Payload broken = payloads.get(101);
+        Error error = new AssertionError("Truck broke down");
+        Transport truck = new Transport(false, 10) {
+            @Override
+            public Payload deliveryPayload(Payload payload) {
+                if(payload == broken)
+                    throw error;
+                return super.deliveryPayload(payload);
+            }
+        };
+
+        try(ShardedDelivery sharded = new ShardedDelivery(4, List.of(truck), 4)) {
+            CompletableFuture<Long> run = CompletableFuture.supplyAsync(() -> sharded.deliver(payloads));
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> run.get(30, TimeUnit.SECONDS));
+            // The CompletionException thrown by deliver is unwrapped by get
+            assertSame(error, thrown.getCause());
+
+            payloads.remove(broken);
+            assertEquals(7_999, (long) CompletableFuture.supplyAsync(() -> sharded.deliver(payloads)).get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    // The sharded mode delivers every package and credits each headquarters
+    public void startSharded() {
+        PackageDeliveryApplication app = new PackageDeliveryApplication(ExecutorStrategy.FIXED);
+        app.setUpHeadquarters(8);
+        app.setUpTrucks(8, 10);
+        app.setUpPackages(10_000);
+        DeliveryReport report = app.startSharded(4);
+        app.shutdown();
+
+        assertEquals(ExecutorStrategy.PINNED, report.getStrategy());
+        assertEquals(10_000, report.getDelivered());
+        assertEquals(0, report.getFailed());
+        for(Destination headquarters : app.getHeadquarters()) {
+            assertEquals(1_250, app.getDelivered(headquarters));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package test;
+
+import mock.app.DeliveryReport;
+import mock.app.PackageDeliveryApplication;
+import mock.entity.Destination;
+import mock.entity.DestinationRegistry;
+import mock.entity.Payload;
+import mock.entity.PayloadStore;
+import mock.entity.Transport;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StoreTest {
+
+    @AfterClass
+    public static void log() {
+        System.out.println("*************************************************");
+    }
+
+    @Test
+    // Views read and write their record and can be delivered by a Transport like any payload
+    public void view() {
+        DestinationRegistry registry = new DestinationRegistry(4);
+        Destination origin = registry.intern("HQ-0");
+        Destination destination = registry.intern("HQ-1");
+        PayloadStore store = new PayloadStore(2, registry, "Package-");
+        int index = store.add(7, origin, destination);
+
+        PayloadStore.View view = store.view(index);
+        assertEquals("Package-7", view.getName());
+        assertSame(origin, view.getOrigin());
+        assertSame(destination, view.getDestination());
+        assertNull(view.getCurrentLocation());
+        assertFalse(view.hasDeadline());
+
+        assertSame(view, new Transport(false, 10).deliveryPayload(view));
+        assertTrue(view.compareAndSetLocation(null, origin));
+        assertFalse(view.compareAndSetLocation(null, destination));
+        view.setCurrentLocation(destination);
+        assertTrue(view.isDelivered());
+        assertTrue(store.isDelivered(index));
+
+        store.setFlags(index, PayloadStore.DELIVERED);
+        store.setFlags(index, PayloadStore.MISSED);
+        assertEquals(PayloadStore.DELIVERED | PayloadStore.MISSED, store.getFlags(index));
+    }
+
+    @Test
+    // A full store refuses payloads and destinations must come from its registry
+    public void capacity() {
+        DestinationRegistry registry = new DestinationRegistry(4);
+        Destination hq = registry.intern("HQ-0");
+        PayloadStore store = new PayloadStore(1, registry, "Package-");
+        store.add(0, hq, hq);
+
+        assertThrows(IllegalStateException.class, () -> store.add(1, hq, hq));
+        assertThrows(IllegalArgumentException.class, () -> new PayloadStore(1, registry, "Package-").add(0, hq, new Destination("HQ-1")));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.view(1));
+        assertEquals(32, store.getOffHeapBytes());
+    }
+
+    @Test
+    // Readers only see fully written records while other threads keep adding, and scan them through one view
+    public void concurrentAdd() throws InterruptedException {
+        DestinationRegistry registry = new DestinationRegistry(4);
+        registry.intern("HQ-0");
+        Destination origin = registry.intern("HQ-1");
+        Destination destination = registry.intern("HQ-2");
+        PayloadStore store = new PayloadStore(40_000, registry, "Package-");
+        Thread[] writers = new Thread[4];
+        for(int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for(int i = 0; i < 10_000; i++) {
+                    store.add(i, origin, destination);
+                }
+            });
+            writers[t].start();
+        }
+
+        List<Payload> views = new ArrayList<>();
+        while(store.size() < 40_000) {
+            views.clear();
+            store.forEach(view -> {
+                assertSame(origin, view.getOrigin());
+                assertSame(destination, view.getDestination());
+                assertFalse(view.hasDeadline());
+                if(views.isEmpty())
+                    views.add(view);
+                else
+                    assertSame(views.get(0), view);
+            });
+        }
+        for(Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(40_000, store.size());
+    }
+
+    @Test
+    // The application delivers stored payloads straight from the store
+    public void start() throws Exception {
+        PackageDeliveryApplication app = new PackageDeliveryApplication();
+        app.setUpHeadquarters(4);
+        app.setUpTrucks(2, 10);
+        List<Destination> headquarters = app.getHeadquarters();
+        PayloadStore store = new PayloadStore(1_000, app.getRegistry(), "Package-");
+        for(int i = 0; i < 1_000; i++) {
+            store.add(i, headquarters.get(i % 4), headquarters.get((i + 1) % 4));
+        }
+
+        try {
+            DeliveryReport report = app.start(store::forEachRetained);
+            assertEquals(1_000, report.getDelivered());
+            for(int i = 0; i < store.size(); i++) {
+                assertTrue(store.isDelivered(i));
+            }
+            assertEquals(250, app.getDelivered(headquarters.get(0)));
+        } finally {
+            app.shutdown();
+        }
+    }
+}